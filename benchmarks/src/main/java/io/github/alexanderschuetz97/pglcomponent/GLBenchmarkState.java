@@ -0,0 +1,99 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLDrawableFactory;
+import com.jogamp.opengl.GLOffscreenAutoDrawable;
+import com.jogamp.opengl.GLProfile;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Offscreen drawable whose context is current in the benchmark thread and a bridge attached to it.
+ * Works headless with Xvfb or Mesa llvmpipe.
+ */
+@State(Scope.Thread)
+public class GLBenchmarkState {
+
+    @Param({"1280x720", "1920x1080", "3840x2160"})
+    public String resolution;
+
+    @Param({"BGR", "INT_RGB", "INT_ARGB_PRE", "RGB565", "GRAY"})
+    public PGLComponentPixelFormat format;
+
+    protected int width;
+    protected int height;
+    protected GLOffscreenAutoDrawable drawable;
+    protected GL gl;
+    protected PGLComponentBridge bridge;
+    protected int frame;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] split = resolution.split("x");
+        width = Integer.parseInt(split[0]);
+        height = Integer.parseInt(split[1]);
+
+        GLProfile profile = GLProfile.get(GLProfile.GL2GL3);
+        GLCapabilities capabilities = createCapabilities(profile);
+        drawable = GLDrawableFactory.getFactory(profile).createOffscreenAutoDrawable(null, capabilities, null, width, height);
+        drawable.display();
+        drawable.getContext().makeCurrent();
+        gl = drawable.getGL();
+
+        bridge = new PGLComponentBridge();
+        bridge.setPixelFormat(format);
+        configure(bridge);
+        bridge.attach();
+
+        //Allocates all buffers
+        render();
+        bridge.pull(gl, width, height);
+    }
+
+    protected GLCapabilities createCapabilities(GLProfile profile) {
+        return new GLCapabilities(profile);
+    }
+
+    protected void configure(PGLComponentBridge bridge) {
+        //Defaults
+    }
+
+    /**
+     * Gives opengl something to do so glReadPixels has to wait for it.
+     */
+    protected void render() {
+        frame++;
+        gl.glClearColor((frame & 0xff) / 255f, 0.5f, 0.25f, 1f);
+        gl.glClear(GL.GL_COLOR_BUFFER_BIT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bridge.detach();
+        bridge.disposeGL(gl);
+        drawable.getContext().release();
+        drawable.destroy();
+    }
+}
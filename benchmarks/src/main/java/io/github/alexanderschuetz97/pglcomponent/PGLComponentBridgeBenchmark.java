@@ -0,0 +1,154 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLProfile;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each step of the opengl to AWT pipeline of {@link PGLComponentBridge}.
+ *
+ * Run with: mvn package exec:exec -Djmh.args="PGLComponentBridgeBenchmark"
+ * On a machine without display use xvfb-run or LIBGL_ALWAYS_SOFTWARE=1 for Mesa llvmpipe.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PGLComponentBridgeBenchmark {
+
+    public static class PullState extends GLBenchmarkState {
+        @Param({"0", "2", "3"})
+        public int pixelBufferObjects;
+
+        @Param({"false", "true"})
+        public boolean flipOnGPU;
+
+        @Override
+        protected void configure(PGLComponentBridge bridge) {
+            bridge.setPixelBufferObjects(pixelBufferObjects);
+            bridge.setFlipOnGPU(flipOnGPU);
+        }
+    }
+
+    public static class MultisampleState extends GLBenchmarkState {
+        @Param({"0", "2", "4", "8"})
+        public int samples;
+
+        @Override
+        protected GLCapabilities createCapabilities(GLProfile profile) {
+            GLCapabilities capabilities = new GLCapabilities(profile);
+            if (samples > 0) {
+                capabilities.setSampleBuffers(true);
+                capabilities.setNumSamples(samples);
+            }
+            return capabilities;
+        }
+    }
+
+    public static class CopyState extends GLBenchmarkState {
+        @Param({"false", "true"})
+        public boolean flipOnGPU;
+
+        protected ByteBuffer pixels;
+        protected Graphics graphics;
+        protected BufferedImage target;
+
+        @Override
+        protected void configure(PGLComponentBridge bridge) {
+            bridge.setFlipOnGPU(flipOnGPU);
+        }
+
+        @Setup(Level.Trial)
+        public void setupCopy() {
+            pixels = ByteBuffer.allocateDirect(width * height * format.getBytesPerPixel()).order(ByteOrder.nativeOrder());
+            //Stand in for the screen, this is what Java2D would use for a compatible image on most pipelines.
+            target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            graphics = target.getGraphics();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDownCopy() {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * Entire pull: glReadPixels (or pixel buffer object map), flip, copy and publish.
+     */
+    @Benchmark
+    public void pull(PullState state) {
+        state.render();
+        state.bridge.pull(state.gl, state.width, state.height);
+    }
+
+    /**
+     * Entire pull of a multisampled drawable like the one of a sketch that called smooth, including resolving it into a single sample framebuffer.
+     */
+    @Benchmark
+    public void pullMultisampled(MultisampleState state) {
+        state.render();
+        state.bridge.pull(state.gl, state.width, state.height);
+    }
+
+    /**
+     * Only the copy from the opengl buffer into the image including the flip.
+     */
+    @Benchmark
+    public void transfer(CopyState state) {
+        state.bridge.transfer(state.pixels);
+    }
+
+    /**
+     * Handing a frame from the opengl thread to the AWT thread.
+     */
+    @Benchmark
+    public Object publishAndFetch(CopyState state) {
+        state.bridge.publish();
+        return state.bridge.fetchNextSwingFrame();
+    }
+
+    /**
+     * Drawing the frame onto a AWT graphics.
+     */
+    @Benchmark
+    public void push(CopyState state) {
+        state.bridge.push(state.graphics);
+    }
+}
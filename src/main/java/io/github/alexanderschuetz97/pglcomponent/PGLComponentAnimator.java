@@ -0,0 +1,275 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Animator that drives any number of {@link PGLComponentSurface} from a fixed number of render threads.
+ * Each surface is assigned to the thread with the fewest surfaces and drawn at its own frame rate.
+ * The surfaces of a thread are drawn round-robin so that a slow sketch cannot starve the other sketches.
+ *
+ * The render threads are taken from the render executor of the {@link PGLComponentExecutor} and only run while they have at least 1 surface.
+ * Use {@link PGLComponentSurface#setAnimator(PGLComponentAnimator)} to let an animator drive a sketch.
+ * Sketches without an animator set are driven by their own animator with 1 render thread.
+ *
+ * The frame rate of a surface is read before every frame, so it can be changed at any time without restarting anything.
+ * To hit the frame time more accurately than parking allows, the render threads spin for the last part of the wait.
+ */
+public class PGLComponentAnimator {
+
+    private static PGLComponentAnimator SHARED;
+
+    /**
+     * Default time in nanoseconds a render thread spins before a frame is due instead of parking.
+     */
+    public static final long DEFAULT_SPIN = 500_000L;
+
+    private final Lane[] lanes;
+
+    /**
+     * Creates an animator with the given amount of render threads.
+     */
+    public PGLComponentAnimator(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads <= 0");
+        }
+
+        lanes = new Lane[threads];
+        for (int i = 0; i < threads; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * Sets how many nanoseconds before a frame is due the render threads stop parking and spin instead.
+     * Parking may overshoot by a timer tick, which is around 0.1ms on Linux but can be a lot longer on Windows.
+     * 0 disables spinning. Default is {@link #DEFAULT_SPIN}.
+     */
+    public void setSpin(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("nanos < 0");
+        }
+
+        for (Lane lane : lanes) {
+            lane.spin = nanos;
+        }
+    }
+
+    /**
+     * Returns the animator with a single render thread that is shared by all sketches that want to use it.
+     */
+    public static synchronized PGLComponentAnimator getShared() {
+        if (SHARED == null) {
+            SHARED = new PGLComponentAnimator(1);
+        }
+        return SHARED;
+    }
+
+    /**
+     * Starts drawing the surface.
+     */
+    protected void add(PGLComponentSurface surface) {
+        Lane lane = lanes[0];
+        for (Lane l : lanes) {
+            if (l.slots.size() < lane.slots.size()) {
+                lane = l;
+            }
+        }
+
+        lane.add(new Slot(surface));
+    }
+
+    /**
+     * Stops drawing the surface.
+     */
+    protected void remove(PGLComponentSurface surface) {
+        for (Lane lane : lanes) {
+            lane.remove(surface);
+        }
+    }
+
+    /**
+     * Wakes up all render threads so they check if any surface is due.
+     */
+    protected void wakeUp() {
+        for (Lane lane : lanes) {
+            Thread thread = lane.thread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * A surface and the time it is due to be drawn next.
+     */
+    protected static class Slot {
+        protected final PGLComponentSurface surface;
+        protected long next = System.nanoTime();
+
+        public Slot(PGLComponentSurface surface) {
+            this.surface = surface;
+        }
+    }
+
+    /**
+     * A single render thread and its surfaces.
+     */
+    protected static class Lane implements Runnable {
+        protected final List<Slot> slots = new CopyOnWriteArrayList<>();
+        protected volatile Thread thread;
+        protected volatile long spin = DEFAULT_SPIN;
+        protected boolean looping = false;
+        protected int offset = 0;
+
+        protected synchronized void add(Slot slot) {
+            for (Slot s : slots) {
+                if (s.surface == slot.surface) {
+                    return;
+                }
+            }
+
+            slots.add(slot);
+            if (!looping) {
+                looping = true;
+                PGLComponentExecutor.executeRender(this);
+                return;
+            }
+
+            Thread current = thread;
+            if (current != null) {
+                LockSupport.unpark(current);
+            }
+        }
+
+        protected synchronized void remove(PGLComponentSurface surface) {
+            for (Slot s : slots) {
+                if (s.surface == surface) {
+                    slots.remove(s);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            boolean more = true;
+            try {
+                while (more) {
+                    more = tick();
+                }
+            } finally {
+                if (more) {
+                    //Something escaped a frame. Let the next add start the lane again instead of leaving it dead.
+                    synchronized (this) {
+                        looping = false;
+                        thread = null;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Draws every due surface once, then waits until the next surface is due.
+         * Returns false if there are no more surfaces and the loop should end.
+         */
+        protected boolean tick() {
+            Slot[] current;
+            synchronized (this) {
+                current = slots.toArray(new Slot[0]);
+                if (current.length == 0) {
+                    looping = false;
+                    thread = null;
+                    return false;
+                }
+            }
+
+            long wake = Long.MAX_VALUE;
+            //False if we only wake up to check again, those do not have to be on time.
+            boolean precise = false;
+
+            //Start with a different surface each tick, so no surface is always drawn last.
+            offset = (offset + 1) % current.length;
+            for (int i = 0; i < current.length; i++) {
+                Slot slot = current[(offset + i) % current.length];
+                long interval = slot.surface.getFrameInterval();
+                long now = System.nanoTime();
+                if (slot.next - now > interval) {
+                    //The frame rate was raised, dont wait for the rest of the old interval.
+                    slot.next = now + interval;
+                }
+
+                long due = slot.next;
+                if (slot.next - now <= 0) {
+                    if (slot.surface.isDisplayDue()) {
+                        slot.next += interval;
+                        if (slot.next - now <= 0) {
+                            //Sketch is too slow for its frame rate, dont try to catch up.
+                            slot.next = now + interval;
+                        }
+                        due = slot.next;
+
+                        try {
+                            slot.surface.display();
+                        } catch (Exception | Error e) {
+                            //Dont let a broken sketch take the other sketches down with it.
+                            slots.remove(slot);
+                            slot.surface.displayFailed(e);
+                        }
+                    } else {
+                        //Sleep until woken up by an input event. A sketch may also call redraw from some other thread,
+                        //which we cant get notified about, so check again once per frame.
+                        due = now + interval;
+                        if (wake == Long.MAX_VALUE || due - wake < 0) {
+                            wake = due;
+                            precise = false;
+                        }
+                        continue;
+                    }
+                }
+
+                if (wake == Long.MAX_VALUE || due - wake < 0) {
+                    wake = due;
+                    precise = true;
+                }
+            }
+
+            long spinTime = precise ? spin : 0;
+            long sleep = wake - System.nanoTime();
+            if (sleep > spinTime) {
+                LockSupport.parkNanos(this, sleep - spinTime);
+                if (wake - System.nanoTime() > spinTime) {
+                    //Woken up early, check again what is due.
+                    return true;
+                }
+            }
+
+            //Parking is not accurate enough for the last part.
+            if (precise) {
+                while (wake - System.nanoTime() > 0) {
+                    Thread.yield();
+                }
+            }
+
+            return true;
+        }
+    }
+}
@@ -19,18 +19,33 @@ package io.github.alexanderschuetz97.pglcomponent;
 
 
 import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2ES3;
 import com.jogamp.opengl.GL3;
 import com.jogamp.opengl.util.GLBuffers;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.VolatileImage;
 import java.nio.ByteBuffer;
-import java.util.concurrent.TimeUnit;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -42,7 +57,16 @@ public class PGLComponentBridge {
 
     private int width;
     private int height;
-    private final ImageWithBuffer[] all;
+    /**
+     * Size of the sketch the frames are shown at, larger than width and height if the sketch is rendered at a lower resolution.
+     */
+    private int logicalWidth;
+    private int logicalHeight;
+    /**
+     * Incremented by the opengl thread every time the size or format changes. Images of an older generation
+     * that the AWT thread hands back are replaced by the opengl thread before it writes to them.
+     */
+    private int generation;
     private ImageWithBuffer glImage;
     private final AtomicReference<ImageWithBuffer> syncImage = new AtomicReference<>();
     private volatile ImageWithBuffer swingImage;
@@ -51,15 +75,116 @@ public class PGLComponentBridge {
     private volatile boolean signalNextFrame = false;
     private volatile boolean disposed = false;
 
+    /**
+     * Components that are repainted whenever a new frame is published.
+     */
+    private final List<FrameTarget> frameTargets = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean frameTargetsPending = new AtomicBoolean();
+
+    /**
+     * Receive every published frame in the opengl thread.
+     */
+    private final List<PGLComponentFrameConsumer> frameConsumers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Receive the raw pixels of every published frame in the opengl thread.
+     */
+    private final List<PGLComponentFrameSink> frameSinks = new CopyOnWriteArrayList<>();
+
+    /**
+     * Screenshots that the opengl thread fills after the next frame was read.
+     */
+    private final Queue<ScreenshotRequest> screenshotRequests = new ConcurrentLinkedQueue<>();
+
+    /**
+     * If true there is no AWT thread, frames handed to the frame consumers count as displayed.
+     */
+    private volatile boolean headless = false;
+
+    /**
+     * Size of the tiles used to detect which parts of the frame have changed. 0 means disabled.
+     */
+    private volatile int changeDetection = 0;
+    private int tileSize;
+    private int tilesX;
+    private int tilesY;
+    private long[] tileHashes;
+
+    /**
+     * State of each component painted by push(Component). Only accessed in the awt thread.
+     */
+    private final Map<Component, ComponentState> componentStates = new WeakHashMap<>();
+
     private ByteBuffer glBuffer;
     private int flipStart;
     private int flipRow;
     private int flipSkip;
 
+    private volatile PGLComponentPixelFormat pixelFormat = PGLComponentPixelFormat.BGR;
+    private PGLComponentPixelFormat format;
+
+    /**
+     * Amount of pixel buffer objects used for asynchronous readback. 0 means synchronous glReadPixels.
+     */
+    private volatile int pixelBufferObjects = 0;
+    /**
+     * If true the frame is read synchronously even if pixel buffer objects are enabled.
+     */
+    private volatile boolean synchronousReadback = false;
+    private int[] pbos;
+    private int pboIndex;
+    private int pboFilled;
+
+    /**
+     * If true the image is flipped by blitting it into the flip framebuffer before it is read.
+     */
+    private volatile boolean flipOnGPU = false;
+    private boolean flippedOnGPU;
+    private int[] flipFramebuffer;
+    private int flipWidth;
+    private int flipHeight;
+
+    /**
+     * Single sample framebuffer a multisampled back buffer is resolved into before it is read.
+     */
+    private int[] resolveFramebuffer;
+    private int resolveWidth;
+    private int resolveHeight;
+    /**
+     * GL_SAMPLE_BUFFERS of the default framebuffer, -1 if it has to be queried again.
+     */
+    private int sampleBuffers = -1;
+    /**
+     * True while a framebuffer other than the default framebuffer is bound for reading.
+     */
+    private boolean readFramebufferBound;
+
+    /**
+     * True if the context can not convert the frame into the format on the graphics card.
+     */
+    private boolean conversionUnsupported;
+    /**
+     * True if the context can not run the grayscale shader, {@link PGLComponentPixelFormat#GRAY} is then read as INT_RGB.
+     */
+    private boolean grayscaleUnsupported;
+    private PGLComponentGrayscalePass grayscalePass;
+    /**
+     * Restores the opengl state of the renderer after the grayscale pass, null if there is no renderer.
+     */
+    private volatile Runnable restoreState;
+
+    /**
+     * If true each component gets a VolatileImage that the frame is uploaded into once and repainted from.
+     */
+    private volatile boolean volatileImages = false;
+
+    private final PGLComponentMetrics metrics = new PGLComponentMetrics();
+    private long copyNanos;
+    private boolean frameChanged;
+
     public PGLComponentBridge() {
         this.width = -1;
         this.height = -1;
-        all = new ImageWithBuffer[3];
     }
 
     public int getWidth() {
@@ -70,6 +195,185 @@ public class PGLComponentBridge {
         return height;
     }
 
+    /**
+     * Sets the pixel format used to transfer the pixels from opengl to AWT.
+     * Use {@link PGLComponentPixelFormat#fastest()} to pick the format the current Java2D pipeline can draw without converting it.
+     *
+     * If the context can not convert to {@link PGLComponentPixelFormat#GRAY} the frames are read as INT_RGB instead,
+     * {@link #getPixelFormat()} still returns GRAY then.
+     *
+     * Default is {@link PGLComponentPixelFormat#BGR}. Can be called in any thread, the change is applied the next frame.
+     */
+    public void setPixelFormat(PGLComponentPixelFormat pixelFormat) {
+        if (pixelFormat == null) {
+            throw new IllegalArgumentException("pixelFormat is null");
+        }
+
+        this.pixelFormat = pixelFormat;
+    }
+
+    /**
+     * If enabled each component painted by the bridge gets its own VolatileImage. Every new frame is uploaded
+     * into it once and the component is painted from it. On pipelines that accelerate VolatileImages
+     * (D3D, OpenGL, Metal) repaints of the same frame, for example when a dialog is moved over the component,
+     * are then blits on the graphics card instead of uploading the pixels again.
+     *
+     * Default is false. Can be called in any thread, the change is applied the next repaint.
+     */
+    public void setVolatileImages(boolean volatileImages) {
+        this.volatileImages = volatileImages;
+    }
+
+    public boolean isVolatileImages() {
+        return volatileImages;
+    }
+
+    /**
+     * Set if no AWT component is painted by this bridge. Frames handed to the frame consumers then count as displayed in the metrics.
+     */
+    protected void setHeadless(boolean headless) {
+        this.headless = headless;
+    }
+
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Can be called in any thread. The consumer receives every frame in the opengl thread until it is removed.
+     * Frames are read back from opengl while at least 1 consumer is added even if no component is attached.
+     */
+    public void addFrameConsumer(PGLComponentFrameConsumer consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer is null");
+        }
+
+        attach();
+        frameConsumers.add(consumer);
+    }
+
+    /**
+     * Can be called in any thread.
+     */
+    public void removeFrameConsumer(PGLComponentFrameConsumer consumer) {
+        if (frameConsumers.remove(consumer)) {
+            detach();
+        }
+    }
+
+    /**
+     * Can be called in any thread. The sink receives the raw pixels of every frame in the opengl thread until it is removed.
+     * Frames are read back from opengl while at least 1 sink is added even if no component is attached.
+     */
+    public void addFrameSink(PGLComponentFrameSink sink) {
+        if (sink == null) {
+            throw new IllegalArgumentException("sink is null");
+        }
+
+        attach();
+        frameSinks.add(sink);
+    }
+
+    /**
+     * Can be called in any thread.
+     */
+    public void removeFrameSink(PGLComponentFrameSink sink) {
+        if (frameSinks.remove(sink)) {
+            detach();
+        }
+    }
+
+    /**
+     * Frame timing of this bridge and the sketch that renders into it.
+     */
+    public PGLComponentMetrics getMetrics() {
+        return metrics;
+    }
+
+    public PGLComponentPixelFormat getPixelFormat() {
+        return pixelFormat;
+    }
+
+    /**
+     * Enables asynchronous readback using a ring of count pixel buffer objects.
+     * Opengl will copy the frame into the pixel buffer object while the next frame is already rendering,
+     * which avoids stalling the pipeline in glReadPixels. In exchange the AWT components
+     * will show the image count-1 frames late. 2 or 3 are sensible values.
+     *
+     * 0 disables the pixel buffer objects and reads the back buffer synchronously. This is the default.
+     * Surfaces in render on demand mode always read synchronously.
+     * Can be called in any thread, the change is applied the next frame.
+     */
+    public void setPixelBufferObjects(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count < 0");
+        }
+
+        if (count > 8) {
+            count = 8;
+        }
+
+        this.pixelBufferObjects = count;
+    }
+
+    /**
+     * Forces synchronous readback regardless of the amount of pixel buffer objects.
+     * Used by surfaces that render on demand, a frame in the pixel buffer objects is only handed over once further frames are drawn,
+     * so the last frame drawn on demand would not be shown until the next one.
+     * Can be called in any thread, the change is applied the next frame.
+     */
+    protected void setSynchronousReadback(boolean synchronousReadback) {
+        this.synchronousReadback = synchronousReadback;
+    }
+
+    /**
+     * Sets what restores the opengl state of the renderer after the bridge drew into its own framebuffers,
+     * like endPGL does after raw opengl calls in a sketch. Only needed for {@link PGLComponentPixelFormat#GRAY}.
+     */
+    protected void setRestoreState(Runnable restoreState) {
+        this.restoreState = restoreState;
+    }
+
+    public int getPixelBufferObjects() {
+        return pixelBufferObjects;
+    }
+
+    /**
+     * If enabled the image is flipped in the y axis by opengl using glBlitFramebuffer before it is read back.
+     * The pixels can then be copied into the AWT image in one go instead of row by row.
+     * If the opengl context fails to create the required framebuffer then the bridge silently
+     * falls back to flipping the image on the CPU.
+     *
+     * Default is false. Can be called in any thread, the change is applied the next frame.
+     */
+    public void setFlipOnGPU(boolean flipOnGPU) {
+        this.flipOnGPU = flipOnGPU;
+    }
+
+    public boolean isFlipOnGPU() {
+        return flipOnGPU;
+    }
+
+    /**
+     * Enables detection of unchanged frames. The frame is divided into square tiles of the given size
+     * and each tile is hashed after it was read back from opengl. If no tile has changed compared to the previous frame
+     * then the frame is not published at all. Otherwise components painted by the bridge will only redraw the tiles that have changed.
+     * Smaller tiles mean smaller redraws but more drawImage calls. 64 is a sensible value.
+     *
+     * 0 disables change detection. This is the default. Can be called in any thread, the change is applied the next frame.
+     */
+    public void setChangeDetection(int tileSize) {
+        if (tileSize < 0) {
+            throw new IllegalArgumentException("tileSize < 0");
+        }
+
+        this.changeDetection = tileSize;
+    }
+
+    public int getChangeDetection() {
+        return changeDetection;
+    }
+
     /**
      * Opengl thread frame counter
      */
@@ -79,53 +383,412 @@ public class PGLComponentBridge {
      * ensures that the buffers match the size opf the canvas.
      */
     protected boolean checkBufferSize(GL gl, int width, int height) {
-        if (glBuffer != null && height == this.height && width == this.width) {
-            return true;
+        PGLComponentPixelFormat pixelFormat = this.pixelFormat;
+        if (pixelFormat == PGLComponentPixelFormat.GRAY && grayscaleUnsupported) {
+            //Only for this context, the format that was set is kept.
+            pixelFormat = PGLComponentPixelFormat.INT_RGB;
         }
 
-        all[0] = new ImageWithBuffer(width, height);
-        all[1] = new ImageWithBuffer(width, height);
-        all[2] = new ImageWithBuffer(width, height);
+        if (glBuffer != null && height == this.height && width == this.width && pixelFormat == format) {
+            return true;
+        }
 
-        try {
-            if (SwingUtilities.isEventDispatchThread()) {
-                glImage = all[0];
-                syncImage.set(all[1]);
-                swingImage = all[2];
-            } else {
-                SwingUtilities.invokeAndWait(() -> {
-                    glImage = all[0];
-                    syncImage.set(all[1]);
-                    swingImage = all[2];
-                });
-            }
-        } catch (Exception e) {
-            //TODO log?
-            glBuffer = null;
-            return false;
+        if (pixelFormat == PGLComponentPixelFormat.GRAY && !checkGrayscalePass(gl.getGL3())) {
+            //TODO LOGGING
+            grayscaleUnsupported = true;
+            pixelFormat = PGLComponentPixelFormat.INT_RGB;
         }
 
+        if (pixelFormat != format) {
+            //The flip framebuffer may have the internal format of the old format.
+            deleteFlipFramebuffer(gl);
+        }
 
+        generation++;
+        if (swingImage == null) {
+            //First frame, the AWT thread does not use the images until swingImage is set.
+            glImage = new ImageWithBuffer(width, height, pixelFormat, null, generation);
+            syncImage.set(new ImageWithBuffer(width, height, pixelFormat, null, generation));
+            swingImage = new ImageWithBuffer(width, height, pixelFormat, null, generation);
+        } else {
+            //Never wait for the AWT thread. The image in sync is replaced with an empty image of the new generation, which the AWT thread
+            //ignores because it has no frame. The image the AWT thread currently shows is handed back to us
+            //with the next frame it picks up and replaced in publish.
+            //Images we own are reused if they are large enough, so resizing does not allocate every frame.
+            ImageWithBuffer spare = new ImageWithBuffer(width, height, pixelFormat, glImage, generation);
+            ImageWithBuffer reclaimed = syncImage.getAndSet(spare);
+            glImage = new ImageWithBuffer(width, height, pixelFormat, reclaimed, generation);
+        }
 
 
         this.width = width;
         this.height = height;
+        this.format = pixelFormat;
 
-        flipRow = width * 3;
+        flipRow = width * pixelFormat.getBytesPerPixel();
 
         int[] alignment = new int[1];
         gl.glGetIntegerv(GL.GL_PACK_ALIGNMENT, alignment, 0);
 
         flipSkip = calculateFlipSkip(flipRow, alignment[0]);
 
-        glBuffer = GLBuffers.newDirectByteBuffer((flipRow+flipSkip)*height);
+        int capacityRow = capacity(width) * pixelFormat.getBytesPerPixel();
+        int capacitySize = (capacityRow + calculateFlipSkip(capacityRow, alignment[0])) * capacity(height);
+        int size = (flipRow+flipSkip)*height;
+        if (glBuffer == null || glBuffer.capacity() < size || glBuffer.capacity() > capacitySize * 2) {
+            glBuffer = GLBuffers.newDirectByteBuffer(capacitySize);
+            //The pixel buffer objects have the capacity of the glBuffer.
+            deletePixelBufferObjects(gl);
+        } else {
+            //Keep the pixel buffer objects, but the frames in them have the old size.
+            pboIndex = 0;
+            pboFilled = 0;
+        }
 
 
         flipStart = (flipRow*height)-flipRow;
 
+        if (flipWidth < width || flipHeight < height || flipWidth * flipHeight > capacity(width) * capacity(height) * 2) {
+            deleteFlipFramebuffer(gl);
+        }
+        if (resolveWidth < width || resolveHeight < height || resolveWidth * resolveHeight > capacity(width) * capacity(height) * 2) {
+            deleteResolveFramebuffer(gl);
+        }
+        //The drawable may have been recreated.
+        sampleBuffers = -1;
+        tileHashes = null;
+
+        return true;
+    }
+
+    /**
+     * Rounds a size up to the size that is allocated for it. All buffers are allocated with some spare capacity
+     * so they can be reused while a component is resized, only the used part of them is read and drawn.
+     */
+    protected static int capacity(int size) {
+        return (size + 127) & ~127;
+    }
+
+    /**
+     * ensures that the flip framebuffer exists if it is needed. Returns false if it could not be created.
+     */
+    protected boolean checkFlipFramebuffer(GL3 gl3) {
+        if (flipFramebuffer != null) {
+            return true;
+        }
+
+        //Blitting into a framebuffer of the internal format of the pixel format converts it.
+        flipFramebuffer = createColorFramebuffer(gl3, conversionUnsupported ? GL.GL_RGBA8 : format.getGlInternalFormat(), width, height);
+        if (flipFramebuffer == null) {
+            return false;
+        }
+
+        flipWidth = capacity(width);
+        flipHeight = capacity(height);
+        return true;
+    }
+
+    /**
+     * ensures that the resolve framebuffer exists. Returns false if it could not be created.
+     */
+    protected boolean checkResolveFramebuffer(GL3 gl3, int width, int height) {
+        if (resolveFramebuffer != null && resolveWidth >= width && resolveHeight >= height) {
+            return true;
+        }
+
+        //Tiled captures may read a larger frame than the last one that was pulled.
+        deleteResolveFramebuffer(gl3);
+        resolveFramebuffer = createColorFramebuffer(gl3, GL.GL_RGBA8, width, height);
+        if (resolveFramebuffer == null) {
+            return false;
+        }
+
+        resolveWidth = capacity(width);
+        resolveHeight = capacity(height);
+        return true;
+    }
+
+    /**
+     * Creates a single sample framebuffer with a renderbuffer of the given internal format and the capacity of the given size.
+     * Returns the framebuffer followed by the renderbuffer or null if the framebuffer is not complete.
+     */
+    protected int[] createColorFramebuffer(GL3 gl3, int internalFormat, int width, int height) {
+        int[] fbo = new int[2];
+        gl3.glGenFramebuffers(1, fbo, 0);
+        gl3.glGenRenderbuffers(1, fbo, 1);
+        gl3.glBindRenderbuffer(GL.GL_RENDERBUFFER, fbo[1]);
+        gl3.glRenderbufferStorage(GL.GL_RENDERBUFFER, internalFormat, capacity(width), capacity(height));
+        gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, fbo[0]);
+        gl3.glFramebufferRenderbuffer(GL.GL_DRAW_FRAMEBUFFER, GL.GL_COLOR_ATTACHMENT0, GL.GL_RENDERBUFFER, fbo[1]);
+        int status = gl3.glCheckFramebufferStatus(GL.GL_DRAW_FRAMEBUFFER);
+        gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, gl3.getDefaultDrawFramebuffer());
+        gl3.glBindRenderbuffer(GL.GL_RENDERBUFFER, 0);
+
+        if (status != GL.GL_FRAMEBUFFER_COMPLETE) {
+            gl3.glDeleteFramebuffers(1, fbo, 0);
+            gl3.glDeleteRenderbuffers(1, fbo, 1);
+            return null;
+        }
+
+        return fbo;
+    }
+
+    /**
+     * Deletes the resolve framebuffer. Must be called in the opengl thread.
+     */
+    protected void deleteResolveFramebuffer(GL gl) {
+        if (resolveFramebuffer != null) {
+            gl.glDeleteFramebuffers(1, resolveFramebuffer, 0);
+            gl.glDeleteRenderbuffers(1, resolveFramebuffer, 1);
+            resolveFramebuffer = null;
+        }
+        resolveWidth = 0;
+        resolveHeight = 0;
+    }
+
+    /**
+     * ensures that the grayscale shader is compiled. Returns false if the context does not support it.
+     */
+    protected boolean checkGrayscalePass(GL3 gl3) {
+        if (grayscalePass != null) {
+            return true;
+        }
+
+        PGLComponentGrayscalePass pass = new PGLComponentGrayscalePass();
+        try {
+            if (pass.init(gl3)) {
+                grayscalePass = pass;
+                return true;
+            }
+        } catch (Exception e) {
+            //TODO LOGGING
+        }
+
+        pass.dispose(gl3);
+        return false;
+    }
+
+    /**
+     * Returns true if the default framebuffer is multisampled. glReadPixels would then resolve it implicitly,
+     * which is slow or not supported at all depending on the driver.
+     */
+    protected boolean isMultisampled(GL3 gl3) {
+        if (sampleBuffers < 0) {
+            int[] value = new int[1];
+            gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, gl3.getDefaultDrawFramebuffer());
+            gl3.glGetIntegerv(GL.GL_SAMPLE_BUFFERS, value, 0);
+            sampleBuffers = value[0];
+        }
+
+        return sampleBuffers > 0;
+    }
+
+    /**
+     * Resolves the multisampled default framebuffer into the resolve framebuffer. Returns false if that is not possible.
+     */
+    protected boolean resolveMultisample(GL3 gl3, int width, int height) {
+        try {
+            if (!checkResolveFramebuffer(gl3, width, height)) {
+                return false;
+            }
+
+            //The default read framebuffer of a multisampled offscreen drawable is only resolved by JOGL on swap,
+            //the current frame is in the draw framebuffer.
+            int source = gl3.getDefaultDrawFramebuffer();
+            gl3.glBindFramebuffer(GL.GL_READ_FRAMEBUFFER, source);
+            gl3.glReadBuffer(source == 0 ? GL.GL_BACK : GL.GL_COLOR_ATTACHMENT0);
+            gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, resolveFramebuffer[0]);
+            //A multisampled blit must not scale or flip.
+            gl3.glBlitFramebuffer(0, 0, width, height, 0, 0, width, height, GL.GL_COLOR_BUFFER_BIT, GL.GL_NEAREST);
+            gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, gl3.getDefaultDrawFramebuffer());
+            gl3.glBindFramebuffer(GL.GL_READ_FRAMEBUFFER, resolveFramebuffer[0]);
+            gl3.glReadBuffer(GL.GL_COLOR_ATTACHMENT0);
+        } catch (Exception ex) {
+            //Context does not support blitting, let glReadPixels resolve.
+            unbindReadFramebuffer(gl3);
+            deleteResolveFramebuffer(gl3);
+            sampleBuffers = 0;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Deletes the flip framebuffer. Must be called in the opengl thread.
+     */
+    protected void deleteFlipFramebuffer(GL gl) {
+        if (flipFramebuffer != null) {
+            gl.glDeleteFramebuffers(1, flipFramebuffer, 0);
+            gl.glDeleteRenderbuffers(1, flipFramebuffer, 1);
+            flipFramebuffer = null;
+        }
+        flipWidth = 0;
+        flipHeight = 0;
+    }
+
+    /**
+     * Binds the frame that was just drawn for reading without flipping or converting it. A multisampled back buffer is resolved first.
+     * Returns true if the resolve framebuffer was bound, {@link #unbindReadFramebuffer(GL3)} must then be called once the pixels are read.
+     * Used by {@link PGLComponentTiledCapture}, must be called in the opengl thread.
+     */
+    protected boolean bindResolvedFramebuffer(GL3 gl3, int width, int height) {
+        if (isMultisampled(gl3) && resolveMultisample(gl3, width, height)) {
+            return true;
+        }
+
+        gl3.glReadBuffer(GL.GL_BACK);
+        return false;
+    }
+
+    /**
+     * Binds the framebuffer that glReadPixels should read from. A multisampled back buffer is resolved first.
+     * Returns true if the bound framebuffer contains the image already flipped in the y axis.
+     */
+    protected boolean bindReadFramebuffer(GL3 gl3, int width, int height) {
+        readFramebufferBound = false;
+        if (isMultisampled(gl3)) {
+            readFramebufferBound = resolveMultisample(gl3, width, height);
+        } else {
+            deleteResolveFramebuffer(gl3);
+        }
+
+        if (format == PGLComponentPixelFormat.GRAY) {
+            if (convertGrayscale(gl3, width, height)) {
+                return true;
+            }
+
+            //This frame is read as rgb and converted on the cpu, from the next frame on it is read as INT_RGB.
+            grayscaleUnsupported = true;
+            if (!readFramebufferBound) {
+                gl3.glReadBuffer(GL.GL_BACK);
+            }
+            return false;
+        }
+
+        //Formats with fewer bits are converted by the blit into the flip framebuffer.
+        boolean convert = format.isConvertedOnGPU() && !conversionUnsupported;
+        if (!flipOnGPU && !convert) {
+            deleteFlipFramebuffer(gl3);
+            if (!readFramebufferBound) {
+                gl3.glReadBuffer(GL.GL_BACK);
+            }
+            return false;
+        }
+
+        try {
+            if (!checkFlipFramebuffer(gl3)) {
+                if (convert) {
+                    //Framebuffers of this format are not supported, let glReadPixels convert it.
+                    conversionUnsupported = true;
+                } else {
+                    flipOnGPU = false;
+                }
+                if (!readFramebufferBound) {
+                    gl3.glReadBuffer(GL.GL_BACK);
+                }
+                return false;
+            }
+
+            if (!readFramebufferBound) {
+                gl3.glBindFramebuffer(GL.GL_READ_FRAMEBUFFER, gl3.getDefaultReadFramebuffer());
+                gl3.glReadBuffer(gl3.getDefaultReadBuffer());
+            }
+            //Else flip the resolved image.
+            gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, flipFramebuffer[0]);
+            gl3.glBlitFramebuffer(0, 0, width, height, 0, height, width, 0, GL.GL_COLOR_BUFFER_BIT, GL.GL_NEAREST);
+            gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, gl3.getDefaultDrawFramebuffer());
+            gl3.glBindFramebuffer(GL.GL_READ_FRAMEBUFFER, flipFramebuffer[0]);
+            gl3.glReadBuffer(GL.GL_COLOR_ATTACHMENT0);
+            readFramebufferBound = true;
+        } catch (Exception ex) {
+            //Context does not support blitting, flip on the cpu from now on.
+            flipOnGPU = false;
+            conversionUnsupported = true;
+            deleteFlipFramebuffer(gl3);
+            unbindReadFramebuffer(gl3);
+            readFramebufferBound = false;
+            gl3.glReadBuffer(GL.GL_BACK);
+            return false;
+        }
+
         return true;
     }
 
+    /**
+     * Converts the frame with the grayscale shader and binds the result for reading. Returns false if that is not possible.
+     */
+    protected boolean convertGrayscale(GL3 gl3, int width, int height) {
+        deleteFlipFramebuffer(gl3);
+        try {
+            if (grayscalePass == null || !grayscalePass.checkSize(gl3, width, height)) {
+                return false;
+            }
+
+            if (!readFramebufferBound) {
+                gl3.glBindFramebuffer(GL.GL_READ_FRAMEBUFFER, gl3.getDefaultReadFramebuffer());
+                gl3.glReadBuffer(gl3.getDefaultReadBuffer());
+            }
+            //Else convert the resolved image.
+            grayscalePass.run(gl3, width, height, restoreState);
+            readFramebufferBound = true;
+            return true;
+        } catch (Exception ex) {
+            //TODO LOGGING
+            grayscalePass.dispose(gl3);
+            grayscalePass = null;
+            if (readFramebufferBound) {
+                unbindReadFramebuffer(gl3);
+                readFramebufferBound = false;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Restores the default framebuffers after pixels were read from the flip framebuffer.
+     */
+    protected void unbindReadFramebuffer(GL3 gl3) {
+        gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, gl3.getDefaultDrawFramebuffer());
+        gl3.glBindFramebuffer(GL.GL_READ_FRAMEBUFFER, gl3.getDefaultReadFramebuffer());
+        gl3.glReadBuffer(gl3.getDefaultReadBuffer());
+    }
+
+    /**
+     * ensures that the amount of pixel buffer objects matches the given count.
+     */
+    protected void checkPixelBufferObjects(GL3 gl3, int count) {
+        if (pbos != null && pbos.length == count) {
+            return;
+        }
+
+        deletePixelBufferObjects(gl3);
+
+        if (count == 0) {
+            return;
+        }
+
+        pbos = new int[count];
+        gl3.glGenBuffers(count, pbos, 0);
+        for (int pbo : pbos) {
+            gl3.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, pbo);
+            gl3.glBufferData(GL2ES3.GL_PIXEL_PACK_BUFFER, glBuffer.capacity(), null, GL2ES3.GL_STREAM_READ);
+        }
+        gl3.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, 0);
+    }
+
+    /**
+     * Deletes the pixel buffer objects. Must be called in the opengl thread.
+     */
+    protected void deletePixelBufferObjects(GL gl) {
+        if (pbos != null) {
+            gl.glDeleteBuffers(pbos.length, pbos, 0);
+            pbos = null;
+        }
+        pboIndex = 0;
+        pboFilled = 0;
+    }
+
     /**
      * Calculate how many bytes must be skipped at the end of each row based on opengl memory alignment.
      */
@@ -143,34 +806,410 @@ public class PGLComponentBridge {
         return alignment - remainder;
     }
 
-    public void pull(GL gl, int width, int height) {
-        //Check if the image was resized.
-        if (!checkBufferSize(gl, width, height)) {
-            //Failed to resize buffers.
-            //Skip this frame try again next time.
+    public void pull(GL gl, int width, int height) {
+        pull(gl, width, height, width, height);
+    }
+
+    /**
+     * Reads a frame of the given size that is shown at the logical size. Used if the sketch is rendered at a lower resolution
+     * than its actual size, the frame is then scaled up when it is drawn onto a component.
+     */
+    public void pull(GL gl, int width, int height, int logicalWidth, int logicalHeight) {
+        this.logicalWidth = logicalWidth;
+        this.logicalHeight = logicalHeight;
+
+        //Check if the image was resized.
+        if (!checkBufferSize(gl, width, height)) {
+            //Failed to resize buffers.
+            //Skip this frame try again next time.
+            return;
+        }
+
+        //Is there even any component attached to this bridge?
+        //If not then there is no point in copying stuff around from and to various buffers
+        if (pullCounter.get() <= 0 && !signalNextFrame && screenshotRequests.isEmpty()) {
+            //Whatever is left in the pixel buffer objects is outdated once someone attaches again.
+            pboFilled = 0;
+            return;
+        }
+
+        //Read the back buffer from opengl
+        GL3 gl3 = gl.getGL3();
+        boolean flipped = bindReadFramebuffer(gl3, width, height);
+        if (flipped != flippedOnGPU) {
+            //Frames still in the pixel buffer objects have the wrong orientation.
+            flippedOnGPU = flipped;
+            pboFilled = 0;
+        }
+
+        long readStart = System.nanoTime();
+        copyNanos = 0;
+        frameChanged = false;
+        try {
+            int count = synchronousReadback ? 0 : pixelBufferObjects;
+            if (count == 0 && pbos != null) {
+                deletePixelBufferObjects(gl3);
+            }
+
+            if (format == PGLComponentPixelFormat.GRAY && grayscaleUnsupported) {
+                if (!pullGrayscaleOnCPU(gl3, width, height, readStart)) {
+                    return;
+                }
+            } else if (count > 0) {
+                if (!pullAsync(gl3, width, height, count)) {
+                    return;
+                }
+            } else {
+                glBuffer.position(0);
+                try {
+                    gl3.glReadPixels(0, 0, width, height, format.getGlFormat(), format.getGlType(), glBuffer);
+                } catch (Exception ex) {
+                    //Byte alignment has changed, unlikely unless the GL context was changed...
+                    glBuffer = null;
+                    return;
+                }
+
+                receive(glBuffer, readStart);
+            }
+        } finally {
+            if (readFramebufferBound) {
+                unbindReadFramebuffer(gl3);
+            }
+        }
+
+        completeScreenshots();
+
+        if (!frameChanged) {
+            //Identical to the previous frame, nothing to publish.
+            signalFrame();
+            return;
+        }
+
+        publish();
+
+        if (!frameTargets.isEmpty() && frameTargetsPending.compareAndSet(false, true)) {
+            //Coalesce: if the EDT has not yet painted the previous frame it will just paint this one instead.
+            SwingUtilities.invokeLater(this::pushFrameTargets);
+        }
+
+        signalFrame();
+        metrics.fireFrame(frameCounter);
+    }
+
+    /**
+     * Copies the gl image into the images of all pending screenshots. Must be called in the opengl thread.
+     */
+    protected void completeScreenshots() {
+        ScreenshotRequest request;
+        while ((request = screenshotRequests.poll()) != null) {
+            try {
+                BufferedImage target = request.target;
+                if (target == null || target.getWidth() != width || target.getHeight() != height || target.getType() != format.getImageType()) {
+                    target = new BufferedImage(width, height, format.getImageType());
+                }
+
+                glImage.copyTo(target);
+                PGLComponentExecutor.complete(request.future, target);
+            } catch (Exception e) {
+                PGLComponentExecutor.completeExceptionally(request.future, e);
+            }
+        }
+    }
+
+    /**
+     * Hands the gl image over to the AWT thread.
+     */
+    protected void publish() {
+        //Would take billions of years, MIN_VALUE is reserved for invalid frames.
+        if (++frameCounter == Long.MIN_VALUE) {
+            frameCounter++;
+        }
+
+        glImage.frame = frameCounter;
+        glImage.logicalWidth = logicalWidth;
+        glImage.logicalHeight = logicalHeight;
+        glImage.published = System.nanoTime();
+        glImage.displayed = false;
+
+        for (PGLComponentFrameConsumer consumer : frameConsumers) {
+            try {
+                consumer.accept(glImage.image, glImage.frame);
+            } catch (Exception e) {
+                //TODO LOGGING
+            }
+        }
+
+        if (headless && !frameConsumers.isEmpty()) {
+            //There is no AWT thread that could pick it up, the consumers are the display.
+            glImage.displayed = true;
+        }
+
+        glImage = syncImage.getAndSet(glImage);
+
+        metrics.framesPublished.increment();
+        if (glImage.frame != Long.MIN_VALUE && !glImage.displayed) {
+            //The AWT thread never picked this frame up.
+            metrics.framesDropped.increment();
+        }
+
+        if (glImage.generation != generation) {
+            //The AWT thread handed back an image of the size before the last resize, it no longer uses it.
+            glImage = new ImageWithBuffer(width, height, format, glImage, generation);
+        }
+    }
+
+    /**
+     * Wakes up threads waiting for the next frame.
+     */
+    protected void signalFrame() {
+        if (signalNextFrame) {
+            signalNextFrame = false;
+            synchronized (nextFrameMutex) {
+                nextFrameMutex.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Hashes all tiles of the gl image and marks the tiles that differ from the previously published frame as dirty.
+     * Returns false if change detection is enabled and nothing has changed.
+     */
+    protected boolean detectChanges() {
+        int size = changeDetection;
+        if (size <= 0) {
+            tileHashes = null;
+            glImage.dirtyTiles = null;
+            return true;
+        }
+
+        boolean full = false;
+        if (tileHashes == null || tileSize != size) {
+            tileSize = size;
+            tilesX = (width + size - 1) / size;
+            tilesY = (height + size - 1) / size;
+            tileHashes = new long[tilesX * tilesY];
+            full = true;
+        }
+
+        if (glImage.dirtyTiles == null || glImage.dirtyTiles.length != tileHashes.length) {
+            glImage.dirtyTiles = new boolean[tileHashes.length];
+        }
+
+        glImage.tileSize = tileSize;
+        glImage.tilesX = tilesX;
+
+        boolean changed = full;
+        for (int ty = 0, i = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++, i++) {
+                long hash = hashTile(tx * tileSize, ty * tileSize);
+                boolean dirty = full || hash != tileHashes[i];
+                glImage.dirtyTiles[i] = dirty;
+                tileHashes[i] = hash;
+                changed |= dirty;
+            }
+        }
+
+        if (full) {
+            //Nothing to compare against, the consumer has to draw everything.
+            glImage.dirtyTiles = null;
+        }
+
+        return changed;
+    }
+
+    /**
+     * FNV-1a hash of the tile starting at the given pixel.
+     */
+    protected long hashTile(int x, int y) {
+        int w = Math.min(tileSize, width - x);
+        int h = Math.min(tileSize, height - y);
+        long hash = 0xcbf29ce484222325L;
+
+        if (glImage.ints != null) {
+            int[] ints = glImage.ints;
+            for (int row = y; row < y + h; row++) {
+                int off = row * width + x;
+                for (int i = off; i < off + w; i++) {
+                    hash = (hash ^ ints[i]) * 0x100000001b3L;
+                }
+            }
+            return hash;
+        }
+
+        if (glImage.shorts != null) {
+            short[] shorts = glImage.shorts;
+            for (int row = y; row < y + h; row++) {
+                int off = row * width + x;
+                for (int i = off; i < off + w; i++) {
+                    hash = (hash ^ shorts[i]) * 0x100000001b3L;
+                }
+            }
+            return hash;
+        }
+
+        byte[] buffer = glImage.buffer;
+        int bpp = format.getBytesPerPixel();
+        for (int row = y; row < y + h; row++) {
+            int off = (row * width + x) * bpp;
+            for (int i = off; i < off + w * bpp; i++) {
+                hash = (hash ^ buffer[i]) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Reads the back buffer into the next pixel buffer object of the ring and transfers the oldest
+     * pixel buffer object into the gl image. Returns false if there is no frame to publish yet.
+     */
+    protected boolean pullAsync(GL3 gl3, int width, int height, int count) {
+        long readStart = System.nanoTime();
+        try {
+            checkPixelBufferObjects(gl3, count);
+            if (pbos == null) {
+                return false;
+            }
+
+            gl3.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, pbos[pboIndex]);
+            gl3.glReadPixels(0, 0, width, height, format.getGlFormat(), format.getGlType(), 0L);
+
+            pboIndex = (pboIndex + 1) % pbos.length;
+            if (pboFilled < pbos.length) {
+                pboFilled++;
+                if (pboFilled < pbos.length) {
+                    //The ring is not full yet, the oldest frame is still the one we just started reading.
+                    gl3.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, 0);
+                    return false;
+                }
+            }
+
+            //pboIndex now points to the oldest pixel buffer object which will be overwritten next frame.
+            gl3.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, pbos[pboIndex]);
+            ByteBuffer mapped = gl3.glMapBufferRange(GL2ES3.GL_PIXEL_PACK_BUFFER, 0, glBuffer.capacity(), GL.GL_MAP_READ_BIT);
+            if (mapped == null) {
+                gl3.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, 0);
+                return false;
+            }
+
+            try {
+                receive(mapped, readStart);
+            } finally {
+                gl3.glUnmapBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER);
+                gl3.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, 0);
+            }
+        } catch (Exception ex) {
+            //Same as for synchronous reads, reallocate everything next frame.
+            gl3.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, 0);
+            glBuffer = null;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the frame as rgba and converts it to luma on the cpu. Only used for the frame in which the grayscale pass failed,
+     * reading GL_RED would only give the red channel. Returns false if the frame could not be read.
+     */
+    protected boolean pullGrayscaleOnCPU(GL3 gl3, int width, int height, long readStart) {
+        ByteBuffer rgba = GLBuffers.newDirectByteBuffer(width * height * 4);
+        try {
+            gl3.glReadPixels(0, 0, width, height, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, rgba);
+        } catch (Exception ex) {
+            glBuffer = null;
+            return false;
+        }
+
+        //Same layout as glReadPixels with GL_RED would have written.
+        int stride = flipRow + flipSkip;
+        for (int y = 0; y < height; y++) {
+            int in = y * width * 4;
+            int out = y * stride;
+            for (int x = 0; x < width; x++, in += 4) {
+                int r = rgba.get(in) & 0xff;
+                int g = rgba.get(in + 1) & 0xff;
+                int b = rgba.get(in + 2) & 0xff;
+                glBuffer.put(out + x, (byte) ((299 * r + 587 * g + 114 * b) / 1000));
+            }
+        }
+
+        glBuffer.position(0);
+        receive(glBuffer, readStart);
+        return true;
+    }
+
+    /**
+     * Called with the pixels read from opengl. Transfers them into the gl image and hands them to the frame sinks
+     * if the frame has changed.
+     */
+    protected void receive(ByteBuffer pixels, long readStart) {
+        long copyStart = System.nanoTime();
+        transfer(pixels);
+        copyNanos = System.nanoTime() - copyStart;
+
+        metrics.readTime.record(copyStart - readStart);
+        metrics.copyTime.record(copyNanos);
+
+        frameChanged = detectChanges();
+        if (frameChanged && !frameSinks.isEmpty()) {
+            //publish will give the frame this number.
+            long frame = frameCounter + 1 == Long.MIN_VALUE ? Long.MIN_VALUE + 1 : frameCounter + 1;
+            deliver(pixels, frame);
+        }
+    }
+
+    /**
+     * Hands the raw pixels to all frame sinks that are ready.
+     */
+    protected void deliver(ByteBuffer pixels, long frame) {
+        int stride = flipRow + flipSkip;
+        for (PGLComponentFrameSink sink : frameSinks) {
+            try {
+                if (!sink.isReady()) {
+                    sink.onFrameDropped(frame);
+                    continue;
+                }
+
+                ByteBuffer view = pixels.duplicate().order(ByteOrder.nativeOrder());
+                view.position(0);
+                view.limit(stride * height);
+                sink.onFrame(view, width, height, stride, format, flippedOnGPU, frame);
+            } catch (Exception e) {
+                //TODO LOGGING
+            }
+        }
+    }
+
+    /**
+     * Copies the pixels read from opengl into the gl image.
+     */
+    protected void transfer(ByteBuffer pixels) {
+        pixels.position(0);
+
+        if (glImage.ints != null) {
+            transferInts(pixels);
             return;
         }
 
-        //Is there even any component attached to this bridge?
-        //If not then there is no point in copying stuff around from and to various buffers
-        if (pullCounter.get() <= 0 && !signalNextFrame) {
+        if (glImage.shorts != null) {
+            transferShorts(pixels);
             return;
         }
 
-        //Read the back buffer from opengl
-        GL3 gl3 = gl.getGL3();
-        gl3.glReadBuffer(GL.GL_BACK);
-        glBuffer.position(0);
-        try {
-            gl3.glReadPixels(0, 0, width, height, GL.GL_BGR, GL.GL_UNSIGNED_BYTE, glBuffer);
-        } catch (Exception ex) {
-            //Byte alignment has changed, unlikely unless the GL context was changed...
-            glBuffer = null;
+        if (flippedOnGPU) {
+            //Already flipped by opengl
+            if (flipSkip == 0) {
+                pixels.get(glImage.buffer, 0, flipRow * height);
+                return;
+            }
+
+            for (int x = 0; x <= flipStart; x+=flipRow) {
+                pixels.get(glImage.buffer, x, flipRow);
+                pixels.position(pixels.position()+flipSkip);
+            }
             return;
         }
 
-        glBuffer.position(0);
-
         //Memory layout of the backbuffer is inverted in the y axis.
         //We swap it by filling the buffered image from bottom to top and reading on the backbuffer top to bottom.
         //Each pixel is 3 byte BLUE GREEN RED values. Each row may end with filler bytes that are to be discarded.
@@ -178,48 +1217,125 @@ public class PGLComponentBridge {
         //Memory. The alignment is decided on by the GL context.
         for (int x = flipStart; x >= 0; x-=flipRow) {
             //Read a row
-            glBuffer.get(glImage.buffer, x, flipRow);
+            pixels.get(glImage.buffer, x, flipRow);
             //Skip the filler bytes
-            glBuffer.position(glBuffer.position()+flipSkip);
+            pixels.position(pixels.position()+flipSkip);
         }
+    }
 
-        //Should never happen in any case we reset all image frame count to invalid when this does happen.
-        if (++frameCounter == Long.MIN_VALUE) {
-            for (ImageWithBuffer img : all) {
-                img.frame = Long.MIN_VALUE;
-            }
-            frameCounter++;
+    /**
+     * Copies the pixels read from opengl into the gl image of a format that uses 1 int per pixel.
+     */
+    protected void transferInts(ByteBuffer pixels) {
+        //GL_UNSIGNED_INT_8_8_8_8_REV is in native byte order.
+        IntBuffer ints = pixels.order(ByteOrder.nativeOrder()).asIntBuffer();
+        int stride = (flipRow + flipSkip) >> 2;
+
+        if (flippedOnGPU && flipSkip == 0) {
+            ints.get(glImage.ints, 0, width * height);
+            return;
         }
 
-        glImage.frame = frameCounter;
+        for (int y = 0; y < height; y++) {
+            ints.position(y * stride);
+            ints.get(glImage.ints, (flippedOnGPU ? y : height - y - 1) * width, width);
+        }
+    }
 
-        glImage = syncImage.getAndSet(glImage);
+    /**
+     * Copies the pixels read from opengl into the gl image of a format that uses 1 short per pixel.
+     */
+    protected void transferShorts(ByteBuffer pixels) {
+        //GL_UNSIGNED_SHORT_5_6_5 is in native byte order.
+        ShortBuffer shorts = pixels.order(ByteOrder.nativeOrder()).asShortBuffer();
+        int stride = (flipRow + flipSkip) >> 1;
 
-        if (signalNextFrame) {
-            signalNextFrame = false;
-            synchronized (nextFrameMutex) {
-                nextFrameMutex.notifyAll();
-            }
+        if (flippedOnGPU && flipSkip == 0) {
+            shorts.get(glImage.shorts, 0, width * height);
+            return;
+        }
+
+        for (int y = 0; y < height; y++) {
+            shorts.position(y * stride);
+            shorts.get(glImage.shorts, (flippedOnGPU ? y : height - y - 1) * width, width);
+        }
+    }
+
+    /**
+     * Releases all opengl resources held by the bridge. Must be called in the opengl thread.
+     */
+    public void disposeGL(GL gl) {
+        deletePixelBufferObjects(gl);
+        deleteFlipFramebuffer(gl);
+        deleteResolveFramebuffer(gl);
+        if (grayscalePass != null) {
+            grayscalePass.dispose(gl.getGL3());
+            grayscalePass = null;
         }
+        //The next context may support it.
+        grayscaleUnsupported = false;
     }
 
     public void onDispose() {
         synchronized (nextFrameMutex) {
             this.disposed = true;
         }
+
+        ScreenshotRequest request;
+        while ((request = screenshotRequests.poll()) != null) {
+            request.future.completeExceptionally(new IllegalStateException("Sketch was disposed"));
+        }
     }
 
     /**
      * Fetches the next swing frame. Must always be called in AWT Thread
      */
     protected ImageWithBuffer fetchNextSwingFrame() {
-        if (syncImage.get().frame > swingImage.frame) {
-            swingImage = syncImage.getAndSet(swingImage);
+        while (syncImage.get().frame > swingImage.frame) {
+            ImageWithBuffer current = swingImage;
+            ImageWithBuffer next = syncImage.getAndSet(current);
+            if (next.frame > current.frame) {
+                swingImage = next;
+                swingImage.displayed = true;
+                metrics.pushLatency.record(System.nanoTime() - swingImage.published);
+                break;
+            }
+
+            //The sketch was resized in between and the opengl thread replaced the frame with an empty image, hand it back.
+            if (syncImage.compareAndSet(current, next)) {
+                break;
+            }
+
+            //The opengl thread already took our image back with its next frame, we no longer own it.
+            swingImage = next;
         }
 
         return swingImage;
     }
 
+    /**
+     * Can be called in any thread, never blocks. Returns a future that is completed with the next frame that is rendered.
+     * The future is completed by the {@link PGLComponentExecutor}, use SwingUtilities.invokeLater for work on AWT components.
+     * If the sketch is not drawn (for example noLoop in render on demand mode) then the future is completed once it is drawn again.
+     */
+    public CompletableFuture<BufferedImage> screenshotAsync() {
+        return screenshotAsync(null);
+    }
+
+    /**
+     * Same as {@link #screenshotAsync()} but copies the frame into the given image if it has the size of the frame and the type
+     * of the pixel format. This allows reusing the image of a previous screenshot. Otherwise a new image is allocated.
+     */
+    public CompletableFuture<BufferedImage> screenshotAsync(BufferedImage target) {
+        ScreenshotRequest request = new ScreenshotRequest(new CompletableFuture<>(), target);
+        screenshotRequests.add(request);
+        if (disposed && screenshotRequests.remove(request)) {
+            request.future.completeExceptionally(new IllegalStateException("Sketch was disposed"));
+        }
+
+        return request.future;
+    }
+
     /**
      * Must be called in the awt thread, or you may get screen tearing in your screenshot
      * and may also cause screen tearing in all AWT components attached to this bridge
@@ -236,10 +1352,13 @@ public class PGLComponentBridge {
             }
         }
 
+        if (swingImage == null) {
+            throw new IllegalStateException("The sketch has not rendered a frame yet");
+        }
+
         ImageWithBuffer myImage = fetchNextSwingFrame();
-        BufferedImage image = new BufferedImage(myImage.image.getWidth(), myImage.image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
-        byte[] buffer = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
-        System.arraycopy(myImage.buffer, 0, buffer, 0, Math.min(myImage.buffer.length, buffer.length));
+        BufferedImage image = new BufferedImage(myImage.image.getWidth(), myImage.image.getHeight(), myImage.image.getType());
+        myImage.copyTo(image);
         return image;
 
     }
@@ -250,14 +1369,14 @@ public class PGLComponentBridge {
      * Must be called in the awt thread
      */
     public void push(Graphics graphics) {
-        if (glBuffer == null) {
+        if (swingImage == null) {
             return;
         }
 
         ImageWithBuffer myImage = fetchNextSwingFrame();
 
         if (myImage.frame != Long.MIN_VALUE) {
-            graphics.drawImage(myImage.image, 0, 0, null);
+            graphics.drawImage(myImage.image, 0, 0, myImage.logicalWidth, myImage.logicalHeight, null);
         }
     }
 
@@ -269,10 +1388,18 @@ public class PGLComponentBridge {
             return;
         }
 
+        if (swingImage == null) {
+            return;
+        }
+
+        ComponentState state = componentStates.computeIfAbsent(component, c -> new ComponentState());
+
+        //The size of the frame we are about to draw, the opengl thread may already render at a different size.
+        ImageWithBuffer current = fetchNextSwingFrame();
         Dimension size = component.getSize();
         Dimension psize = component.getPreferredSize();
-        if (psize.height != height || psize.width != width) {
-            Dimension dim = new Dimension(width, height);
+        if (state.scaleMode == PGLComponentScaleMode.NONE && (psize.height != current.logicalHeight || psize.width != current.logicalWidth)) {
+            Dimension dim = new Dimension(current.logicalWidth, current.logicalHeight);
             component.setPreferredSize(dim);
             if (size.width <= 0 || size.height <= 0) {
                 SwingUtilities.invokeLater(component::revalidate);
@@ -281,44 +1408,273 @@ public class PGLComponentBridge {
 
         Graphics graphics = component.getGraphics();
 
-        if (graphics != null) {
+        if (graphics == null) {
+            return;
+        }
+
+        if (state.frame != Long.MIN_VALUE && current.frame == state.frame) {
+            metrics.duplicatePushes.increment();
+        }
+
+        try {
+            if (volatileImages) {
+                pushVolatile(component, graphics, state, current);
+                return;
+            }
+
+            state.flush();
+            if (current.frame == Long.MIN_VALUE) {
+                return;
+            }
+
+            if (state.scaleMode != PGLComponentScaleMode.NONE || current.isScaled()) {
+                drawScaled(component, graphics, current.image, current.logicalWidth, current.logicalHeight, state);
+                state.frame = current.frame;
+                return;
+            }
+
+            if (changeDetection > 0) {
+                pushChanges(graphics, state, current);
+                return;
+            }
+
+            graphics.drawImage(current.image, 0, 0, current.logicalWidth, current.logicalHeight, null);
+            state.frame = current.frame;
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * Paints the current frame onto the given graphics of the component. Use this in the paint method of a component
+     * that is also painted by the bridge, so that it is painted from its VolatileImage if enabled.
+     * Must be called in the awt thread
+     */
+    public void push(Component component, Graphics graphics) {
+        ComponentState state = componentStates.get(component);
+        if (state == null) {
             push(graphics);
+            return;
+        }
+
+        if (swingImage == null) {
+            return;
+        }
+
+        ImageWithBuffer myImage = fetchNextSwingFrame();
+        if (volatileImages) {
+            pushVolatile(component, graphics, state, myImage);
+            return;
+        }
+
+        if (myImage.frame == Long.MIN_VALUE) {
+            return;
+        }
+
+        if (state.scaleMode == PGLComponentScaleMode.NONE) {
+            graphics.drawImage(myImage.image, 0, 0, myImage.logicalWidth, myImage.logicalHeight, null);
+        } else {
+            drawScaled(component, graphics, myImage.image, myImage.logicalWidth, myImage.logicalHeight, state);
         }
     }
 
-    private static final AtomicLong COUNTER = new AtomicLong();
+    /**
+     * Sets how frames are drawn onto the component if it has a different size than the frame.
+     * interpolation is one of the RenderingHints.VALUE_INTERPOLATION_ values.
+     * Components with a scale mode other than NONE keep their preferred size.
+     * Must be called in the awt thread
+     */
+    public void setScaleMode(Component component, PGLComponentScaleMode scaleMode, Object interpolation) {
+        if (scaleMode == null) {
+            throw new IllegalArgumentException("scaleMode is null");
+        }
 
-    protected void asyncPushLoop(Component component, long targetDelay, AtomicBoolean running) {
-        pullCounter.incrementAndGet();
-        try {
-            while(running.get()) {
+        if (interpolation != RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+                && interpolation != RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                && interpolation != RenderingHints.VALUE_INTERPOLATION_BICUBIC) {
+            throw new IllegalArgumentException("interpolation is not a RenderingHints.VALUE_INTERPOLATION_ value");
+        }
+
+        ComponentState state = componentStates.computeIfAbsent(component, c -> new ComponentState());
+        state.scaleMode = scaleMode;
+        state.interpolation = interpolation;
+        //Force a full redraw
+        state.frame = Long.MIN_VALUE;
+    }
+
+    /**
+     * Maps a point on the component to the point of the frame that is drawn there, for example the position of a mouse event.
+     * Points outside the frame are mapped to points outside the frame.
+     * Must be called in the awt thread
+     */
+    public Point toFrame(Component component, int x, int y) {
+        ComponentState state = component == null ? null : componentStates.get(component);
+        if (state == null || state.scaleMode == PGLComponentScaleMode.NONE || state.layout[6] <= 0 || state.layout[7] <= 0) {
+            return new Point(x, y);
+        }
+
+        int[] layout = state.layout;
+        return new Point(
+                layout[0] + (int) Math.floor((x - layout[4]) * (double) layout[2] / layout[6]),
+                layout[1] + (int) Math.floor((y - layout[5]) * (double) layout[3] / layout[7]));
+    }
+
+    /**
+     * Draws the image onto the component as configured by its scale mode and remembers where it was drawn for toFrame.
+     * The layout is calculated for an image of the logical size, the image itself may have a lower resolution.
+     * Must be called in the awt thread
+     */
+    protected void drawScaled(Component component, Graphics graphics, Image image, int logicalWidth, int logicalHeight, ComponentState state) {
+        int cw = component.getWidth();
+        int ch = component.getHeight();
+        state.scaleMode.layout(logicalWidth, logicalHeight, cw, ch, state.layout);
+        int[] l = state.layout;
+
+        int iw = image.getWidth(null);
+        int ih = image.getHeight(null);
+        if (state.scaleMode == PGLComponentScaleMode.NONE && iw == logicalWidth && ih == logicalHeight) {
+            graphics.drawImage(image, 0, 0, null);
+            return;
+        }
+
+        //Letterbox
+        if (l[4] > 0 || l[5] > 0 || l[4] + l[6] < cw || l[5] + l[7] < ch) {
+            Color background = component.getBackground();
+            graphics.setColor(background == null ? Color.BLACK : background);
+            graphics.fillRect(0, 0, cw, l[5]);
+            graphics.fillRect(0, l[5] + l[7], cw, ch - l[5] - l[7]);
+            graphics.fillRect(0, l[5], l[4], l[7]);
+            graphics.fillRect(l[4] + l[6], l[5], cw - l[4] - l[6], l[7]);
+        }
+
+        if (graphics instanceof Graphics2D) {
+            ((Graphics2D) graphics).setRenderingHint(RenderingHints.KEY_INTERPOLATION, state.interpolation);
+        }
+
+        double rx = logicalWidth > 0 ? (double) iw / logicalWidth : 1;
+        double ry = logicalHeight > 0 ? (double) ih / logicalHeight : 1;
+        graphics.drawImage(image, l[4], l[5], l[4] + l[6], l[5] + l[7],
+                (int) Math.round(l[0] * rx), (int) Math.round(l[1] * ry),
+                (int) Math.round((l[0] + l[2]) * rx), (int) Math.round((l[1] + l[3]) * ry), null);
+    }
+
+    /**
+     * Uploads the frame into the VolatileImage of the component if it does not already contain it and then draws the VolatileImage.
+     * myImage is the frame fetched by the caller, it is not fetched again so all decisions of one push are made for the same frame.
+     * Must be called in the awt thread
+     */
+    protected void pushVolatile(Component component, Graphics graphics, ComponentState state, ImageWithBuffer myImage) {
+        if (myImage.frame == Long.MIN_VALUE) {
+            return;
+        }
+
+        GraphicsConfiguration config = component.getGraphicsConfiguration();
+        if (config == null) {
+            //Not displayable, there is nothing to accelerate.
+            graphics.drawImage(myImage.image, 0, 0, myImage.logicalWidth, myImage.logicalHeight, null);
+            return;
+        }
+
+        int w = myImage.image.getWidth();
+        int h = myImage.image.getHeight();
+
+        do {
+            VolatileImage image = state.volatileImage;
+            if (image == null || image.getWidth() != w || image.getHeight() != h) {
+                state.flush();
+                image = config.createCompatibleVolatileImage(w, h, myImage.image.getTransparency());
+                state.volatileImage = image;
+            }
+
+            int validation = image.validate(config);
+            if (validation == VolatileImage.IMAGE_INCOMPATIBLE) {
+                //Component was moved to a different screen.
+                state.flush();
+                continue;
+            }
+
+            if (validation == VolatileImage.IMAGE_RESTORED || state.uploaded != myImage.frame) {
+                Graphics2D g = image.createGraphics();
                 try {
-                    long s = System.nanoTime();
-                    SwingUtilities.invokeAndWait(() -> {
-                        if (running.get()) {
-                            push(component);
-                        }
-                    });
-                    s = targetDelay - (System.nanoTime() - s);
-                    if (s > 0) {
-                        TimeUnit.NANOSECONDS.sleep(s);
-                    }
-                } catch (Exception e) {
-                    //TODO LOGGING
-                    return;
+                    g.setComposite(AlphaComposite.Src);
+                    g.drawImage(myImage.image, 0, 0, null);
+                } finally {
+                    g.dispose();
+                }
+                state.uploaded = myImage.frame;
+            }
+
+            drawScaled(component, graphics, image, myImage.logicalWidth, myImage.logicalHeight, state);
+            if (image.contentsLost()) {
+                state.uploaded = Long.MIN_VALUE;
+            }
+        } while (state.volatileImage == null || state.uploaded == Long.MIN_VALUE);
+
+        state.frame = myImage.frame;
+    }
+
+    /**
+     * Only draws the parts of the image that the component does not already show.
+     * myImage is the frame fetched by the caller.
+     * Must be called in the awt thread
+     */
+    protected void pushChanges(Graphics graphics, ComponentState state, ImageWithBuffer myImage) {
+        if (myImage.frame == Long.MIN_VALUE || myImage.frame == state.frame) {
+            return;
+        }
+
+        boolean[] dirty = myImage.dirtyTiles;
+        if (dirty == null || state.frame == Long.MIN_VALUE || myImage.frame - 1 != state.frame || myImage.isScaled()) {
+            //Component missed a frame, we only know what changed compared to the previous frame.
+            graphics.drawImage(myImage.image, 0, 0, myImage.logicalWidth, myImage.logicalHeight, null);
+            state.frame = myImage.frame;
+            return;
+        }
+
+        int size = myImage.tileSize;
+        int w = myImage.image.getWidth();
+        int h = myImage.image.getHeight();
+        int rows = dirty.length / myImage.tilesX;
+        for (int ty = 0; ty < rows; ty++) {
+            int y1 = ty * size;
+            int y2 = Math.min(y1 + size, h);
+            int run = -1;
+            for (int tx = 0; tx <= myImage.tilesX; tx++) {
+                boolean isDirty = tx < myImage.tilesX && dirty[ty * myImage.tilesX + tx];
+                if (isDirty && run == -1) {
+                    run = tx;
+                } else if (!isDirty && run != -1) {
+                    //Draw all adjacent dirty tiles of this row in one call.
+                    int x1 = run * size;
+                    int x2 = Math.min(tx * size, w);
+                    graphics.drawImage(myImage.image, x1, y1, x2, y2, x1, y1, x2, y2, null);
+                    run = -1;
                 }
             }
-        } finally {
-            pullCounter.decrementAndGet();
         }
 
+        state.frame = myImage.frame;
+    }
+
+    /**
+     * Registers something that needs the pixels of each frame. Until the matching call to detach
+     * the pixels are read back from opengl every frame.
+     */
+    protected void attach() {
+        pullCounter.incrementAndGet();
+    }
+
+    protected void detach() {
+        pullCounter.decrementAndGet();
     }
 
     /**
      * Can be called in any thread. Will start a async update loop that will keep
      * repainting the component with image rendered by opengl at a given fps.
+     * Set the returned AtomicBoolean to false to stop repainting the component.
      *
      * The actual painting is always done on the AWT EDT Thread.
+     * All components share a single thread, see {@link PGLComponentPaintScheduler}.
      */
     public AtomicBoolean start(Component component, int fps) {
         if (fps <= 0) {
@@ -329,36 +1685,237 @@ public class PGLComponentBridge {
             fps = 1000;
         }
 
-        final long trg = 1000000000L / fps;
+        return PGLComponentPaintScheduler.getInstance().schedule(this, component, fps);
+    }
+
+
+    /**
+     * Can be called in any thread. Repaints the component every time opengl has rendered a new frame
+     * instead of at a fixed rate. Frames that are rendered while the AWT EDT Thread is still busy painting
+     * the previous frame are skipped. Set the returned AtomicBoolean to false to stop repainting the component.
+     *
+     * The actual painting is always done on the AWT EDT Thread.
+     */
+    public AtomicBoolean startOnFrame(Component component) {
+        FrameTarget target = new FrameTarget(component);
+        attach();
+        frameTargets.add(target);
+        return target.running;
+    }
+
+    /**
+     * Must be called in the awt thread
+     */
+    protected void pushFrameTargets() {
+        frameTargetsPending.set(false);
+        for (FrameTarget target : frameTargets) {
+            if (!target.running.get()) {
+                if (frameTargets.remove(target)) {
+                    detach();
+                }
+                continue;
+            }
+
+            try {
+                push(target.component);
+            } catch (Exception e) {
+                //TODO LOGGING
+                target.running.set(false);
+            }
+        }
+    }
+
+    /**
+     * What a component painted by push(Component) currently shows.
+     */
+    protected static class ComponentState {
+        /**
+         * The frame the component shows. MIN_VALUE if unknown.
+         */
+        protected long frame = Long.MIN_VALUE;
+
+        protected PGLComponentScaleMode scaleMode = PGLComponentScaleMode.NONE;
+        protected Object interpolation = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+
+        /**
+         * Where the frame was last drawn, see {@link PGLComponentScaleMode#layout(int, int, int, int, int[])}.
+         */
+        protected final int[] layout = new int[8];
 
-        final AtomicBoolean running = new AtomicBoolean(true);
+        /**
+         * Accelerated copy of the frame if volatile images are enabled.
+         */
+        protected VolatileImage volatileImage;
 
-        Thread thread = new Thread(() -> asyncPushLoop(component, trg, running));
+        /**
+         * The frame that was last uploaded into the volatile image. MIN_VALUE if none.
+         */
+        protected long uploaded = Long.MIN_VALUE;
 
+        protected void flush() {
+            if (volatileImage != null) {
+                volatileImage.flush();
+                volatileImage = null;
+            }
+            uploaded = Long.MIN_VALUE;
+        }
+    }
 
-        thread.start();
+    /**
+     * A pending screenshotAsync call.
+     */
+    protected static class ScreenshotRequest {
+        protected final CompletableFuture<BufferedImage> future;
+        protected final BufferedImage target;
 
-        return running;
+        public ScreenshotRequest(CompletableFuture<BufferedImage> future, BufferedImage target) {
+            this.future = future;
+            this.target = target;
+        }
     }
 
+    /**
+     * A component that is repainted every frame.
+     */
+    protected static class FrameTarget {
+        protected final Component component;
+        protected final AtomicBoolean running = new AtomicBoolean(true);
+
+        public FrameTarget(Component component) {
+            this.component = component;
+        }
+    }
 
     /**
      * internal transfer object. Image and its buffer.
      * The data contained is only modified by the opengl thread.
+     * The array has the capacity of the size (see {@link #capacity(int)}) so it can be reused while resizing,
+     * it is therefore usually longer than the pixels of the image.
      */
     protected static class ImageWithBuffer {
         protected final BufferedImage image;
+        /**
+         * Pixel data if the format uses bytes, otherwise null.
+         */
         protected final byte[] buffer;
+        /**
+         * Pixel data if the format uses ints, otherwise null.
+         */
+        protected final int[] ints;
+        /**
+         * Pixel data if the format uses shorts, otherwise null.
+         */
+        protected final short[] shorts;
         /**
          * The frame counter. Starts at MIN_VALUE which also means this is an invalid frame.
          * Increased up to max value.
          */
         protected long frame = Long.MIN_VALUE;
 
+        /**
+         * The generation of the bridge this image was created for.
+         */
+        protected final int generation;
+
+        /**
+         * Tiles that changed compared to the previous frame. Null means the entire image must be drawn.
+         */
+        protected boolean[] dirtyTiles;
+        protected int tileSize;
+        protected int tilesX;
+
+        /**
+         * Size the frame is shown at, larger than the image if the sketch was rendered at a lower resolution.
+         */
+        protected int logicalWidth;
+        protected int logicalHeight;
+
+        /**
+         * System.nanoTime() when the frame was published by the opengl thread.
+         */
+        protected long published;
+        /**
+         * True once the AWT thread has picked up the frame.
+         */
+        protected boolean displayed;
+
+        public ImageWithBuffer(int width, int height, PGLComponentPixelFormat format) {
+            this(width, height, format, null, 0);
+        }
+
+        /**
+         * Creates an image that uses the pixel array of the given image if it has the same format and is large enough
+         * but not more than twice as large as needed. Otherwise a pixel array with spare capacity is allocated.
+         * The rows of the image are always stored without gaps at the start of the array.
+         */
+        public ImageWithBuffer(int width, int height, PGLComponentPixelFormat format, ImageWithBuffer reuse, int generation) {
+            this.generation = generation;
+            BufferedImage template = new BufferedImage(1, 1, format.getImageType());
+            SampleModel model = template.getSampleModel().createCompatibleSampleModel(width, height);
+            int elements = width * height * model.getNumDataElements();
+            int capacity = capacity(width) * capacity(height) * model.getNumDataElements();
+
+            DataBuffer data;
+            if (model.getDataType() == DataBuffer.TYPE_INT) {
+                int[] array = reuse != null && reuse.ints != null && reuse.image.getType() == format.getImageType() ? reuse.ints : null;
+                if (array == null || array.length < elements || array.length > capacity * 2) {
+                    array = new int[capacity];
+                }
+                data = new DataBufferInt(array, array.length);
+                ints = array;
+                shorts = null;
+                buffer = null;
+            } else if (model.getDataType() == DataBuffer.TYPE_USHORT) {
+                short[] array = reuse != null && reuse.shorts != null && reuse.image.getType() == format.getImageType() ? reuse.shorts : null;
+                if (array == null || array.length < elements || array.length > capacity * 2) {
+                    array = new short[capacity];
+                }
+                data = new DataBufferUShort(array, array.length);
+                shorts = array;
+                ints = null;
+                buffer = null;
+            } else {
+                byte[] array = reuse != null && reuse.buffer != null && reuse.image.getType() == format.getImageType() ? reuse.buffer : null;
+                if (array == null || array.length < elements || array.length > capacity * 2) {
+                    array = new byte[capacity];
+                }
+                data = new DataBufferByte(array, array.length);
+                buffer = array;
+                ints = null;
+                shorts = null;
+            }
+
+            image = new BufferedImage(template.getColorModel(), Raster.createWritableRaster(model, data, null), template.isAlphaPremultiplied(), null);
+            logicalWidth = width;
+            logicalHeight = height;
+        }
+
+        /**
+         * True if the image has a lower resolution than the size it is shown at.
+         */
+        protected boolean isScaled() {
+            return image.getWidth() != logicalWidth || image.getHeight() != logicalHeight;
+        }
+
+        /**
+         * Copies the pixels into a image of the same size and type.
+         */
+        public void copyTo(BufferedImage target) {
+            DataBuffer data = target.getRaster().getDataBuffer();
+            if (ints != null) {
+                int[] targetInts = ((DataBufferInt) data).getData();
+                System.arraycopy(ints, 0, targetInts, 0, Math.min(ints.length, targetInts.length));
+                return;
+            }
+
+            if (shorts != null) {
+                short[] targetShorts = ((DataBufferUShort) data).getData();
+                System.arraycopy(shorts, 0, targetShorts, 0, Math.min(shorts.length, targetShorts.length));
+                return;
+            }
 
-        public ImageWithBuffer(int width, int height) {
-            image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-            buffer = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            byte[] targetBuffer = ((DataBufferByte) data).getData();
+            System.arraycopy(buffer, 0, targetBuffer, 0, Math.min(buffer.length, targetBuffer.length));
         }
     }
 }
@@ -0,0 +1,227 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Receives the image of a {@link PGLComponentSurface#capture(int, int, PGLComponentCaptureOutput)} row by row from top to bottom,
+ * so the entire image never has to be in memory.
+ * All methods are called in the opengl thread.
+ */
+public interface PGLComponentCaptureOutput {
+
+    void begin(int width, int height) throws IOException;
+
+    /**
+     * Receives the next rows of the image. Each row is width pixels long, each pixel is a 0xAARRGGBB int.
+     */
+    void writeRows(int[] pixels, int rows) throws IOException;
+
+    void end() throws IOException;
+
+    /**
+     * Writes the image as 24 bit PNG into the stream. The stream is not closed.
+     */
+    static PGLComponentCaptureOutput png(OutputStream out) {
+        return new Png(out);
+    }
+
+    /**
+     * Writes the pixels as 3 bytes per pixel in red, green, blue order without any header into the stream.
+     * The stream is not closed. This is the rgb24 format of ffmpeg and the RGB format of ImageMagick.
+     */
+    static PGLComponentCaptureOutput raw(OutputStream out) {
+        return new Raw(out);
+    }
+
+    class Raw implements PGLComponentCaptureOutput {
+        protected final OutputStream out;
+        protected int width;
+        protected byte[] row;
+
+        public Raw(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void begin(int width, int height) {
+            this.width = width;
+            row = new byte[width * 3];
+        }
+
+        @Override
+        public void writeRows(int[] pixels, int rows) throws IOException {
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0, i = y * width; x < row.length; x += 3, i++) {
+                    int pixel = pixels[i];
+                    row[x] = (byte) (pixel >> 16);
+                    row[x + 1] = (byte) (pixel >> 8);
+                    row[x + 2] = (byte) pixel;
+                }
+                out.write(row);
+            }
+        }
+
+        @Override
+        public void end() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Minimal streaming PNG encoder. Each row uses the sub filter which compresses rendered images reasonably well
+     * without having to keep the previous row.
+     */
+    class Png implements PGLComponentCaptureOutput {
+        private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+        protected final OutputStream out;
+        protected int width;
+        protected byte[] row;
+        protected Deflater deflater;
+        protected DeflaterOutputStream idat;
+
+        public Png(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void begin(int width, int height) throws IOException {
+            this.width = width;
+            row = new byte[1 + width * 3];
+            row[0] = 1; //Sub filter
+
+            out.write(SIGNATURE);
+            byte[] header = new byte[13];
+            writeInt(header, 0, width);
+            writeInt(header, 4, height);
+            header[8] = 8; //Bit depth
+            header[9] = 2; //Truecolor
+            writeChunk(out, "IHDR", header, header.length);
+
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            idat = new DeflaterOutputStream(new ChunkStream(out, "IDAT", 1 << 16), deflater, 1 << 16);
+        }
+
+        @Override
+        public void writeRows(int[] pixels, int rows) throws IOException {
+            for (int y = 0; y < rows; y++) {
+                int left = 0;
+                for (int x = 1, i = y * width; x < row.length; x += 3, i++) {
+                    int pixel = pixels[i];
+                    row[x] = (byte) ((pixel >> 16) - (left >> 16));
+                    row[x + 1] = (byte) ((pixel >> 8) - (left >> 8));
+                    row[x + 2] = (byte) (pixel - left);
+                    left = pixel;
+                }
+                idat.write(row);
+            }
+        }
+
+        @Override
+        public void end() throws IOException {
+            try {
+                idat.close();
+            } finally {
+                deflater.end();
+            }
+            writeChunk(out, "IEND", new byte[0], 0);
+            out.flush();
+        }
+
+        protected static void writeInt(byte[] buffer, int offset, int value) {
+            buffer[offset] = (byte) (value >>> 24);
+            buffer[offset + 1] = (byte) (value >>> 16);
+            buffer[offset + 2] = (byte) (value >>> 8);
+            buffer[offset + 3] = (byte) value;
+        }
+
+        protected static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+            byte[] header = new byte[8];
+            writeInt(header, 0, length);
+            byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(typeBytes, 0, header, 4, 4);
+
+            CRC32 crc = new CRC32();
+            crc.update(typeBytes);
+            crc.update(data, 0, length);
+            byte[] footer = new byte[4];
+            writeInt(footer, 0, (int) crc.getValue());
+
+            out.write(header);
+            out.write(data, 0, length);
+            out.write(footer);
+        }
+
+        /**
+         * Splits everything written to it into chunks of the given type. Closing it does not close the underlying stream.
+         */
+        protected static class ChunkStream extends OutputStream {
+            private final OutputStream out;
+            private final String type;
+            private final byte[] buffer;
+            private int count;
+
+            public ChunkStream(OutputStream out, String type, int size) {
+                this.out = out;
+                this.type = type;
+                this.buffer = new byte[size];
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                buffer[count++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    if (count == buffer.length) {
+                        flushChunk();
+                    }
+                    int n = Math.min(len, buffer.length - count);
+                    System.arraycopy(b, off, buffer, count, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+                }
+            }
+
+            protected void flushChunk() throws IOException {
+                if (count > 0) {
+                    writeChunk(out, type, buffer, count);
+                    count = 0;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                flushChunk();
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.HierarchyEvent;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This component instructs OpenGL to directly draw to a component.
@@ -112,6 +113,16 @@ public class PGLComponentDirectCanvas extends JPanel {
         return info.getRenderingBridge().makeScreenshot();
     }
 
+    /**
+     * Can be called in any thread, never blocks. See {@link PGLComponentBridge#screenshotAsync()}.
+     */
+    public CompletableFuture<BufferedImage> screenshotAsync() {
+        CompletableFuture<BufferedImage> future = info.getRenderingBridge().screenshotAsync();
+        //Make sure a sketch that does not loop renders a frame for us.
+        info.getSurface().requestRedraw();
+        return future;
+    }
+
     public void dispose() {
         dead = true;
         try {
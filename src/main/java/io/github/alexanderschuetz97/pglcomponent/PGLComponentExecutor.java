@@ -17,20 +17,29 @@
 
 package io.github.alexanderschuetz97.pglcomponent;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Executor singleton for async tasks.
- * Note: JOGL uses its own threading mechanism for FPS Animation.
- * This executor is only for internal PGLComponent tasks.
+ * Holds the 2 executors that run all background work of PGLComponent. No JOGL animator threads are used.
+ *
+ * The executor runs the loop of the {@link PGLComponentPaintScheduler}, completes the futures of screenshots and captures
+ * so their callbacks never run in the opengl thread, and applies {@link PGLComponentSurface#setAnimator(PGLComponentAnimator)}.
+ * On Java 21 or newer it uses virtual threads by default, set the system property "pglcomponent.virtualThreads"
+ * to false to use platform threads instead. Older JVMs always use platform threads.
+ *
+ * The render executor runs the render threads of every {@link PGLComponentAnimator}, including the own animator of each surface.
+ * These threads make OpenGL contexts current, which are bound to platform threads, so it always uses platform threads.
  */
 public class PGLComponentExecutor {
 
     private static final AtomicInteger COUNTER = new AtomicInteger();
     private static Executor INSTANCE;
+    private static Executor RENDER_INSTANCE;
 
     /**
      * Change the executor to your own executor.
@@ -48,23 +57,89 @@ public class PGLComponentExecutor {
 
     public static synchronized Executor getExecutor() {
         if (INSTANCE == null) {
-            setExecutor(Executors.newCachedThreadPool(new ThreadFactory() {
-                @Override
-                public Thread newThread(Runnable runnable) {
-                    Thread t = new Thread(runnable, "PGLComponentExecutor " + COUNTER.get());
-                    try {
-                        t.setDaemon(true);
-                    } catch (Exception ex) {
-                        //DC
-                    }
-                    return t;
-                }
-            }));
+            Executor executor = null;
+            if (!"false".equalsIgnoreCase(System.getProperty("pglcomponent.virtualThreads"))) {
+                executor = newVirtualThreadExecutor();
+            }
+
+            setExecutor(executor != null ? executor : newPlatformThreadExecutor("PGLComponentExecutor "));
         }
         return INSTANCE;
     }
 
+    /**
+     * Change the executor that runs the render threads to your own executor.
+     * The same rules as for {@link #setExecutor(Executor)} apply, additionally the executor must use platform threads.
+     * This method returns the old executor if it was set.
+     */
+    public static synchronized Executor setRenderExecutor(Executor executor) {
+        Executor old = RENDER_INSTANCE;
+        RENDER_INSTANCE = executor;
+        return old;
+    }
+
+    public static synchronized Executor getRenderExecutor() {
+        if (RENDER_INSTANCE == null) {
+            setRenderExecutor(newPlatformThreadExecutor("PGLComponentRender "));
+        }
+        return RENDER_INSTANCE;
+    }
+
     public static void execute(Runnable runnable) {
         getExecutor().execute(runnable);
     }
+
+    /**
+     * Runs a task that renders sketches.
+     */
+    public static void executeRender(Runnable runnable) {
+        getRenderExecutor().execute(runnable);
+    }
+
+    /**
+     * Completes the future in the executor so that whatever depends on the future does not run in the calling thread.
+     * Used by the opengl thread so slow callbacks can not stall rendering.
+     */
+    public static <T> void complete(CompletableFuture<T> future, T value) {
+        execute(() -> future.complete(value));
+    }
+
+    public static void completeExceptionally(CompletableFuture<?> future, Throwable throwable) {
+        execute(() -> future.completeExceptionally(throwable));
+    }
+
+    /**
+     * Returns an executor that starts a named virtual thread for each task.
+     * Returns null if the JVM does not support virtual threads (before Java 21).
+     */
+    public static Executor newVirtualThreadExecutor() {
+        try {
+            //Thread.ofVirtual().name("PGLComponentExecutor ", 0).factory() without requiring Java 21 to compile.
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "PGLComponentExecutor ", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (Executor) method.invoke(null, factory);
+        } catch (Exception e) {
+            //The methods do not exist before Java 21, not having virtual threads is the normal case there and not an error.
+            return null;
+        }
+    }
+
+    private static Executor newPlatformThreadExecutor(String name) {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread t = new Thread(runnable, name + COUNTER.getAndIncrement());
+                try {
+                    t.setDaemon(true);
+                } catch (Exception ex) {
+                    //DC
+                }
+                return t;
+            }
+        });
+    }
 }
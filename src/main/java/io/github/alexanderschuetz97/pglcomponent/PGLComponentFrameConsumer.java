@@ -0,0 +1,37 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Receives every frame of a sketch in the opengl thread. See {@link PGLComponentBridge#addFrameConsumer(PGLComponentFrameConsumer)}.
+ */
+public interface PGLComponentFrameConsumer {
+
+    /**
+     * Called in the opengl thread for every new frame.
+     * The image is of the type of the {@link PGLComponentPixelFormat} of the bridge, so its raster is backed by an int[], short[] or byte[]
+     * that can be accessed without copying using image.getRaster().getDataBuffer().
+     * The array is reused while the sketch is resized, so it can be longer than the image. Only the first
+     * width * height elements (width * height * 3 bytes for BGR) are the pixels, row by row from the top.
+     * The image is reused by the bridge and is only valid until this method returns, copy it if you need it for longer.
+     * The next frame is not rendered until this method returns.
+     */
+    void accept(BufferedImage image, long frame);
+}
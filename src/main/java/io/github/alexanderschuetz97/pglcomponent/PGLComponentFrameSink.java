@@ -0,0 +1,54 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the raw pixels of every frame exactly as they were read back from opengl, without copying them.
+ * Use this to stream a sketch into a video encoder or a socket. See {@link PGLComponentBridge#addFrameSink(PGLComponentFrameSink)}.
+ *
+ * All methods are called in the opengl thread. The next frame is not rendered until they return,
+ * so a slow sink should copy the pixels into a queue and return false from isReady while it is behind.
+ */
+public interface PGLComponentFrameSink {
+
+    /**
+     * Called for every new frame. Frames that are identical to the previous frame are not delivered if change detection is enabled.
+     *
+     * pixels: direct buffer in native byte order, only valid until this method returns. Do not keep a reference to it.
+     * Each row is stride bytes long, the first width * format.getBytesPerPixel() bytes of each row are the pixels, the rest is padding.
+     * The buffer is reused while the sketch is resized, so its capacity and limit can be larger than stride * height.
+     * topDown: if true the first row is the top row of the image, otherwise the first row is the bottom row (as opengl stores it).
+     * frame: the frame number, the same number AWT components see. Increases by 1 with every delivered or dropped frame.
+     */
+    void onFrame(ByteBuffer pixels, int width, int height, int stride, PGLComponentPixelFormat format, boolean topDown, long frame);
+
+    /**
+     * Backpressure. If this returns false the frame is not delivered and onFrameDropped is called instead.
+     */
+    default boolean isReady() {
+        return true;
+    }
+
+    /**
+     * Called instead of onFrame for frames that were skipped because isReady returned false.
+     */
+    default void onFrameDropped(long frame) {
+    }
+}
@@ -0,0 +1,251 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2ES2;
+import com.jogamp.opengl.GL2GL3;
+import com.jogamp.opengl.GL3;
+
+/**
+ * Converts a frame to its luma on the graphics card for {@link PGLComponentPixelFormat#GRAY}.
+ * The frame is copied into a texture and drawn into a single channel framebuffer, flipped in the y axis, by a shader.
+ * Only used by the opengl thread of a {@link PGLComponentBridge}.
+ *
+ * The pass never queries opengl state, that would stall the pipeline every frame. It only changes state Processing
+ * either does not use or restores itself, the rest is restored by the renderer like after raw opengl calls in endPGL.
+ */
+public class PGLComponentGrayscalePass {
+
+    /**
+     * GLSL versions tried until the shader compiles, 1.50 for core profiles and 1.30 for older contexts.
+     */
+    private static final String[] VERSIONS = {"150", "130"};
+
+    private static final String VERTEX =
+            "out vec2 uv;\n" +
+            "void main() {\n" +
+            "    vec2 p = vec2((gl_VertexID << 1) & 2, gl_VertexID & 2);\n" +
+            "    uv = p;\n" +
+            "    gl_Position = vec4(p * 2.0 - 1.0, 0.0, 1.0);\n" +
+            "}\n";
+
+    private static final String FRAGMENT =
+            "uniform sampler2D frame;\n" +
+            "uniform vec2 scale;\n" +
+            "in vec2 uv;\n" +
+            "out vec4 color;\n" +
+            "void main() {\n" +
+            "    vec3 rgb = texture(frame, vec2(uv.x, 1.0 - uv.y) * scale).rgb;\n" +
+            "    color = vec4(dot(rgb, vec3(0.299, 0.587, 0.114)), 0.0, 0.0, 1.0);\n" +
+            "}\n";
+
+    protected int program;
+    protected int scaleLocation;
+    /**
+     * Texture unit the texture stays bound to. Processing only uses the first few units and caches what is bound to them.
+     */
+    protected int unit;
+    protected final int[] vertexArray = new int[1];
+    protected final int[] texture = new int[1];
+    /**
+     * Framebuffer with the texture attached, the frame is blitted into it.
+     */
+    protected final int[] copyFramebuffer = new int[1];
+    protected int[] framebuffer;
+    protected int capacityWidth;
+    protected int capacityHeight;
+
+    /**
+     * Compiles the shader. Returns false if the context does not support it.
+     */
+    protected boolean init(GL3 gl3) {
+        for (String version : VERSIONS) {
+            program = link(gl3, "#version " + version + "\n");
+            if (program != 0) {
+                break;
+            }
+        }
+
+        if (program == 0) {
+            return false;
+        }
+
+        scaleLocation = gl3.glGetUniformLocation(program, "scale");
+        int[] units = new int[1];
+        gl3.glGetIntegerv(GL2ES2.GL_MAX_COMBINED_TEXTURE_IMAGE_UNITS, units, 0);
+        unit = units[0] - 1;
+        gl3.glUseProgram(program);
+        gl3.glUniform1i(gl3.glGetUniformLocation(program, "frame"), unit);
+        //Processing unbinds its shaders after every flush.
+        gl3.glUseProgram(0);
+
+        gl3.glGenVertexArrays(1, vertexArray, 0);
+        gl3.glGenTextures(1, texture, 0);
+        gl3.glGenFramebuffers(1, copyFramebuffer, 0);
+        return true;
+    }
+
+    protected int link(GL3 gl3, String header) {
+        int vertex = compile(gl3, GL2ES2.GL_VERTEX_SHADER, header + VERTEX);
+        int fragment = compile(gl3, GL2ES2.GL_FRAGMENT_SHADER, header + FRAGMENT);
+        if (vertex == 0 || fragment == 0) {
+            gl3.glDeleteShader(vertex);
+            gl3.glDeleteShader(fragment);
+            return 0;
+        }
+
+        int program = gl3.glCreateProgram();
+        gl3.glAttachShader(program, vertex);
+        gl3.glAttachShader(program, fragment);
+        gl3.glBindFragDataLocation(program, 0, "color");
+        gl3.glLinkProgram(program);
+        gl3.glDeleteShader(vertex);
+        gl3.glDeleteShader(fragment);
+
+        int[] status = new int[1];
+        gl3.glGetProgramiv(program, GL2ES2.GL_LINK_STATUS, status, 0);
+        if (status[0] == GL.GL_FALSE) {
+            gl3.glDeleteProgram(program);
+            return 0;
+        }
+
+        return program;
+    }
+
+    protected int compile(GL3 gl3, int type, String source) {
+        int shader = gl3.glCreateShader(type);
+        gl3.glShaderSource(shader, 1, new String[]{source}, null, 0);
+        gl3.glCompileShader(shader);
+
+        int[] status = new int[1];
+        gl3.glGetShaderiv(shader, GL2ES2.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == GL.GL_FALSE) {
+            gl3.glDeleteShader(shader);
+            return 0;
+        }
+
+        return shader;
+    }
+
+    /**
+     * ensures that the texture and framebuffer can hold a frame of the given size. Returns false if the framebuffer is not complete.
+     */
+    protected boolean checkSize(GL3 gl3, int width, int height) {
+        int w = PGLComponentBridge.capacity(width);
+        int h = PGLComponentBridge.capacity(height);
+        if (framebuffer != null && capacityWidth >= width && capacityHeight >= height && capacityWidth * capacityHeight <= w * h * 2) {
+            return true;
+        }
+
+        deleteFramebuffer(gl3);
+
+        gl3.glActiveTexture(GL.GL_TEXTURE0 + unit);
+        gl3.glBindTexture(GL.GL_TEXTURE_2D, texture[0]);
+        gl3.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGBA8, w, h, 0, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, null);
+        gl3.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, GL.GL_NEAREST);
+        gl3.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, GL.GL_NEAREST);
+        //Processing keeps the first unit active outside of its shaders.
+        gl3.glActiveTexture(GL.GL_TEXTURE0);
+
+        gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, copyFramebuffer[0]);
+        gl3.glFramebufferTexture2D(GL.GL_DRAW_FRAMEBUFFER, GL.GL_COLOR_ATTACHMENT0, GL.GL_TEXTURE_2D, texture[0], 0);
+        int copyStatus = gl3.glCheckFramebufferStatus(GL.GL_DRAW_FRAMEBUFFER);
+
+        int[] fbo = new int[2];
+        gl3.glGenFramebuffers(1, fbo, 0);
+        gl3.glGenRenderbuffers(1, fbo, 1);
+        gl3.glBindRenderbuffer(GL.GL_RENDERBUFFER, fbo[1]);
+        gl3.glRenderbufferStorage(GL.GL_RENDERBUFFER, GL2GL3.GL_R8, w, h);
+        gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, fbo[0]);
+        gl3.glFramebufferRenderbuffer(GL.GL_DRAW_FRAMEBUFFER, GL.GL_COLOR_ATTACHMENT0, GL.GL_RENDERBUFFER, fbo[1]);
+        int status = gl3.glCheckFramebufferStatus(GL.GL_DRAW_FRAMEBUFFER);
+        gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, gl3.getDefaultDrawFramebuffer());
+        gl3.glBindRenderbuffer(GL.GL_RENDERBUFFER, 0);
+
+        framebuffer = fbo;
+        capacityWidth = w;
+        capacityHeight = h;
+        if (status != GL.GL_FRAMEBUFFER_COMPLETE || copyStatus != GL.GL_FRAMEBUFFER_COMPLETE) {
+            deleteFramebuffer(gl3);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Converts the frame in the currently bound read framebuffer and binds the result for reading.
+     * The result is already flipped in the y axis. The given runnable restores the state of the renderer afterwards,
+     * if it is null the state Processing starts each frame with is restored instead.
+     */
+    protected void run(GL3 gl3, int width, int height, Runnable restoreState) {
+        //The framebuffers have no depth or stencil buffer and Processing never culls faces, so only these change the result.
+        gl3.glDisable(GL.GL_BLEND);
+        gl3.glDisable(GL.GL_SCISSOR_TEST);
+
+        //Unlike glCopyTexSubImage2D a blit does not need the texture bound to the active unit.
+        gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, copyFramebuffer[0]);
+        gl3.glBlitFramebuffer(0, 0, width, height, 0, 0, width, height, GL.GL_COLOR_BUFFER_BIT, GL.GL_NEAREST);
+
+        gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, framebuffer[0]);
+        gl3.glViewport(0, 0, width, height);
+        gl3.glUseProgram(program);
+        gl3.glUniform2f(scaleLocation, (float) width / capacityWidth, (float) height / capacityHeight);
+        gl3.glBindVertexArray(vertexArray[0]);
+        gl3.glDrawArrays(GL.GL_TRIANGLES, 0, 3);
+
+        //Processing does not use vertex arrays and unbinds its shaders after every flush.
+        gl3.glBindVertexArray(0);
+        gl3.glUseProgram(0);
+        gl3.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, gl3.getDefaultDrawFramebuffer());
+        if (restoreState != null) {
+            restoreState.run();
+        } else {
+            gl3.glEnable(GL.GL_BLEND);
+            gl3.glViewport(0, 0, width, height);
+        }
+
+        gl3.glBindFramebuffer(GL.GL_READ_FRAMEBUFFER, framebuffer[0]);
+        gl3.glReadBuffer(GL.GL_COLOR_ATTACHMENT0);
+    }
+
+    protected void deleteFramebuffer(GL gl) {
+        if (framebuffer != null) {
+            gl.glDeleteFramebuffers(1, framebuffer, 0);
+            gl.glDeleteRenderbuffers(1, framebuffer, 1);
+            framebuffer = null;
+        }
+        capacityWidth = 0;
+        capacityHeight = 0;
+    }
+
+    /**
+     * Deletes all opengl objects. Must be called in the opengl thread.
+     */
+    protected void dispose(GL3 gl3) {
+        deleteFramebuffer(gl3);
+        if (program != 0) {
+            gl3.glDeleteProgram(program);
+            program = 0;
+        }
+        gl3.glDeleteVertexArrays(1, vertexArray, 0);
+        gl3.glDeleteTextures(1, texture, 0);
+        gl3.glDeleteFramebuffers(1, copyFramebuffer, 0);
+    }
+}
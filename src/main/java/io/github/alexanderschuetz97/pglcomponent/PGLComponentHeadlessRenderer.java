@@ -0,0 +1,88 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import processing.core.PApplet;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Renderer to use in sketch settings for sketches that are rendered without any AWT component, for example to
+ * create thumbnails on a server. The sketch is rendered into an offscreen drawable and each frame is handed to
+ * {@link PGLComponentFrameConsumer}s in the opengl thread. The AWT thread is never used, so this works with java.awt.headless=true
+ * as long as JOGL can create an offscreen drawable, for example with Mesa and EGL or Xvfb.
+ *
+ * Do not use PApplet.runSketch for these sketches, it requires a screen. Use {@link #start(PApplet, PGLComponentFrameConsumer)} instead.
+ */
+public class PGLComponentHeadlessRenderer extends PGLComponentIndirectRenderer {
+
+    /**
+     * Tells PApplet to call initOffscreen instead of creating a Frame.
+     */
+    @Override
+    public boolean displayable() {
+        return false;
+    }
+
+    /**
+     * Runs the settings of the sketch, creates its surface and starts rendering it.
+     * The consumer (may be null) is added before the first frame is drawn, so it receives every frame.
+     *
+     * The sketch must call size(?,?, PGLComponentHeadlessRenderer.class.getName()) in its settings.
+     * Call sketch.dispose() to stop rendering.
+     */
+    public static PGLComponentInfo start(PApplet sketch, PGLComponentFrameConsumer consumer) {
+        if (sketch.getSurface() != null) {
+            throw new IllegalStateException("Sketch was already started!");
+        }
+
+        try {
+            //Same as PApplet.handleSettings without querying the screens.
+            Field insideSettings = PApplet.class.getDeclaredField("insideSettings");
+            insideSettings.setAccessible(true);
+            insideSettings.setBoolean(sketch, true);
+            try {
+                sketch.settings();
+            } finally {
+                insideSettings.setBoolean(sketch, false);
+            }
+
+            if (!PGLComponentHeadlessRenderer.class.getName().equals(sketch.sketchRenderer())) {
+                throw new IllegalStateException("Sketch does not have the PGLComponentHeadlessRenderer! during settings you must call size like this: 'size(?,?, PGLComponentHeadlessRenderer.class.getName())'");
+            }
+
+            Method initSurface = PApplet.class.getDeclaredMethod("initSurface");
+            initSurface.setAccessible(true);
+            initSurface.invoke(sketch);
+
+            PGLComponentInfo info = (PGLComponentInfo) sketch.getSurface().getNative();
+            if (consumer != null) {
+                info.getRenderingBridge().addFrameConsumer(consumer);
+            }
+
+            Method startSurface = PApplet.class.getDeclaredMethod("startSurface");
+            startSurface.setAccessible(true);
+            startSurface.invoke(sketch);
+
+            return info;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to start sketch", e);
+        }
+    }
+}
@@ -23,6 +23,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.HierarchyEvent;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -36,6 +37,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * If you do have multiple components attached to the same sketch then do not set allowLayoutManagerToResizeSketch to true for more than 1 component
  * as the components may then fight over who sets the size of the sketch causing the sketch to constantly resize.
  *
+ * Alternatively use {@link #setScaleMode(PGLComponentScaleMode)} to scale the frame to the size of the component
+ * without resizing the sketch, for example to show the same sketch on components of different sizes.
  *
  */
 public class PGLComponentIndirectCanvas extends Canvas {
@@ -44,6 +47,9 @@ public class PGLComponentIndirectCanvas extends Canvas {
     private final boolean allowLayoutManagerToResizeSketch;
     private final PGLComponentInfo info;
     private int fps = 30;
+    private boolean pushOnNewFrame = false;
+    private PGLComponentScaleMode scaleMode = PGLComponentScaleMode.NONE;
+    private Object interpolation = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
 
     public PGLComponentIndirectCanvas(PApplet sketch) {
         this(sketch, true, true);
@@ -67,7 +73,12 @@ public class PGLComponentIndirectCanvas extends Canvas {
 
     @Override
     public void paint(Graphics graphics) {
-        //Nothing
+        //Only called when AWT wants us to restore the content, the bridge paints new frames by itself.
+        if (dead || !wasDisplayable) {
+            return;
+        }
+
+        info.getRenderingBridge().push(this, graphics);
     }
 
 
@@ -93,7 +104,7 @@ public class PGLComponentIndirectCanvas extends Canvas {
 
                 wasDisplayable = true;
                 running.set(false);
-                running = info.getRenderingBridge().start(this, fps);
+                running = startPushing();
                 return;
             }
 
@@ -107,15 +118,23 @@ public class PGLComponentIndirectCanvas extends Canvas {
             }
 
             if (!running.get()) {
-                running = info.getRenderingBridge().start(this, fps);
+                running = startPushing();
             }
         });
     }
 
+    protected AtomicBoolean startPushing() {
+        if (pushOnNewFrame) {
+            return info.getRenderingBridge().startOnFrame(this);
+        }
+
+        return info.getRenderingBridge().start(this, fps);
+    }
+
     @Override
     public void setBounds(int x, int y, int width, int height) {
         super.setBounds(x, y, width, height);
-        if (!allowLayoutManagerToResizeSketch || dead) {
+        if (!allowLayoutManagerToResizeSketch || dead || scaleMode != PGLComponentScaleMode.NONE) {
             return;
         }
         PApplet sketch = info.getSketch();
@@ -142,7 +161,61 @@ public class PGLComponentIndirectCanvas extends Canvas {
             return;
         }
         running.set(false);
-        running = info.getRenderingBridge().start(this, fps);
+        running = startPushing();
+    }
+
+    /**
+     * If set to true then the canvas is repainted every time the sketch has rendered a new frame
+     * instead of at the fixed rate set by setFps. The canvas is then never repainted with the same image twice.
+     */
+    public void setPushOnNewFrame(boolean pushOnNewFrame) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            throw new IllegalStateException("Not AWT Event Queue Thread!");
+        }
+        if (dead) {
+            return;
+        }
+
+        this.pushOnNewFrame = pushOnNewFrame;
+
+        if (!running.get()) {
+            return;
+        }
+        running.set(false);
+        running = startPushing();
+    }
+
+    /**
+     * Sets how the frame is drawn if the component has a different size than the sketch.
+     * If the scale mode is not NONE then the layout manager never resizes the sketch and mouse events are mapped to the sketch.
+     * Default is NONE.
+     */
+    public void setScaleMode(PGLComponentScaleMode scaleMode) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            throw new IllegalStateException("Not AWT Event Queue Thread!");
+        }
+
+        info.getRenderingBridge().setScaleMode(this, scaleMode, interpolation);
+        this.scaleMode = scaleMode;
+        repaint();
+    }
+
+    public PGLComponentScaleMode getScaleMode() {
+        return scaleMode;
+    }
+
+    /**
+     * Sets the interpolation used when scaling the frame, one of the RenderingHints.VALUE_INTERPOLATION_ values.
+     * Default is bilinear.
+     */
+    public void setInterpolation(Object interpolation) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            throw new IllegalStateException("Not AWT Event Queue Thread!");
+        }
+
+        info.getRenderingBridge().setScaleMode(this, scaleMode, interpolation);
+        this.interpolation = interpolation;
+        repaint();
     }
 
     public void dispose() {
@@ -162,5 +235,15 @@ public class PGLComponentIndirectCanvas extends Canvas {
         return info.getRenderingBridge().makeScreenshot();
     }
 
+    /**
+     * Can be called in any thread, never blocks. See {@link PGLComponentBridge#screenshotAsync()}.
+     */
+    public CompletableFuture<BufferedImage> screenshotAsync() {
+        CompletableFuture<BufferedImage> future = info.getRenderingBridge().screenshotAsync();
+        //Make sure a sketch that does not loop renders a frame for us.
+        info.getSurface().requestRedraw();
+        return future;
+    }
+
 
 }
\ No newline at end of file
@@ -18,6 +18,7 @@
 package io.github.alexanderschuetz97.pglcomponent;
 
 import processing.core.PApplet;
+import processing.core.PMatrix3D;
 import processing.core.PSurface;
 import processing.opengl.PGL;
 import processing.opengl.PGraphics3D;
@@ -28,6 +29,16 @@ import processing.opengl.PGraphicsOpenGL;
  */
 public class PGLComponentIndirectRenderer extends PGraphics3D {
 
+    /**
+     * Transformation applied after the projection of the sketch to render only a part of the image. Null if not rendering a tile.
+     */
+    protected PMatrix3D tile;
+
+    /**
+     * Fraction of the sketch size that is actually rendered, see {@link #setRenderScale(float)}.
+     */
+    protected float renderScale = 1;
+
     @Override
     public PSurface createSurface() {
         return surface = new PGLComponentSurface(this, false);
@@ -55,6 +66,113 @@ public class PGLComponentIndirectRenderer extends PGraphics3D {
         PGraphicsOpenGL.completeAllPixelTransfers();
     }
 
+    /**
+     * Sets the transformation from the normalized device coordinates of the entire image to the ones of the tile that should be rendered.
+     * Null renders the entire image again. Must be called in the opengl thread while not drawing.
+     */
+    protected void setTile(PMatrix3D tile) {
+        if (this.tile != null) {
+            PMatrix3D inverse = this.tile.get();
+            inverse.invert();
+            projection.preApply(inverse);
+        }
+
+        this.tile = tile;
+        if (tile != null) {
+            projection.preApply(tile);
+        }
+
+        updateProjmodelview();
+    }
+
+    /**
+     * Renders the sketch into the bottom left part of the drawable that is scale times the size of the sketch.
+     * The sketch still sees its original size, only the viewport shrinks. Must be called in the opengl thread while not drawing.
+     */
+    protected void setRenderScale(float scale) {
+        if (!(scale > 0 && scale <= 1)) {
+            throw new IllegalArgumentException("scale must be > 0 and <= 1");
+        }
+
+        renderScale = scale;
+    }
+
+    protected float getRenderScale() {
+        return renderScale;
+    }
+
+    /**
+     * Restores the opengl state Processing expects after raw opengl calls, the same as endPGL does.
+     * Must be called in the opengl thread.
+     */
+    protected void restoreState() {
+        restoreGL();
+    }
+
+    /**
+     * Width in pixels of the rendered image.
+     */
+    protected int getRenderWidth() {
+        return renderScale == 1 ? width : Math.max(1, Math.round(width * renderScale));
+    }
+
+    /**
+     * Height in pixels of the rendered image.
+     */
+    protected int getRenderHeight() {
+        return renderScale == 1 ? height : Math.max(1, Math.round(height * renderScale));
+    }
+
+    @Override
+    protected void setViewport() {
+        if (renderScale == 1) {
+            super.setViewport();
+            return;
+        }
+
+        viewport.put(0, 0);
+        viewport.put(1, 0);
+        viewport.put(2, getRenderWidth());
+        viewport.put(3, getRenderHeight());
+        pgl.viewport(0, 0, viewport.get(2), viewport.get(3));
+    }
+
+    /**
+     * Applies the tile to a projection the sketch has just set.
+     */
+    protected void applyTile() {
+        if (tile == null) {
+            return;
+        }
+
+        projection.preApply(tile);
+        updateProjmodelview();
+    }
+
+    @Override
+    public void frustum(float left, float right, float bottom, float top, float znear, float zfar) {
+        super.frustum(left, right, bottom, top, znear, zfar);
+        applyTile();
+    }
+
+    @Override
+    public void ortho(float left, float right, float bottom, float top, float near, float far) {
+        super.ortho(left, right, bottom, top, near, far);
+        applyTile();
+    }
+
+    @Override
+    public void resetProjection() {
+        super.resetProjection();
+        applyTile();
+    }
+
+    @Override
+    public void setProjection(PMatrix3D mat) {
+        super.setProjection(mat);
+        applyTile();
+    }
+
     @Override
     public void setSize(int iwidth, int iheight) {
         super.setSize(iwidth, iheight);
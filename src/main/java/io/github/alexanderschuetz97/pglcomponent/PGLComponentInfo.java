@@ -118,4 +118,11 @@ public class PGLComponentInfo {
     public PApplet getSketch() {
         return sketch;
     }
+
+    /**
+     * Returns the frame timing of the sketch or null if there is no rendering bridge.
+     */
+    public PGLComponentMetrics getMetrics() {
+        return renderingBridge == null ? null : renderingBridge.getMetrics();
+    }
 }
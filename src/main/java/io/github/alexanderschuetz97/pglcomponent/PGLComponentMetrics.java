@@ -0,0 +1,198 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Frame timing of a single sketch. All histograms record nanoseconds.
+ * Obtain it with {@link PGLComponentInfo#getMetrics()}.
+ *
+ * drawTime: time spent in sketch.handleDraw.
+ * readTime: time spent in glReadPixels or mapping the pixel buffer object.
+ * copyTime: time spent copying and flipping the pixels into the AWT image.
+ * pushLatency: time from a frame being published by the opengl thread until the AWT thread picks it up.
+ * framesDropped: frames that were published but replaced by a newer frame before the AWT thread picked them up.
+ * duplicatePushes: repaints of a component with the frame it already showed.
+ */
+public class PGLComponentMetrics implements PGLComponentMetricsMXBean {
+
+    protected final PGLComponentHistogram drawTime = new PGLComponentHistogram();
+    protected final PGLComponentHistogram readTime = new PGLComponentHistogram();
+    protected final PGLComponentHistogram copyTime = new PGLComponentHistogram();
+    protected final PGLComponentHistogram pushLatency = new PGLComponentHistogram();
+    protected final LongAdder framesPublished = new LongAdder();
+    protected final LongAdder framesDropped = new LongAdder();
+    protected final LongAdder duplicatePushes = new LongAdder();
+    protected final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    protected ObjectName objectName;
+
+    /**
+     * Listener that is called in the opengl thread after each published frame.
+     * Implementations should be fast as they delay the next frame.
+     */
+    public interface Listener {
+        void onFrame(PGLComponentMetrics metrics, long frame);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    protected void fireFrame(long frame) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onFrame(this, frame);
+            } catch (Exception e) {
+                //TODO LOGGING
+            }
+        }
+    }
+
+    /**
+     * Registers this as MBean in the platform MBean server under
+     * io.github.alexanderschuetz97.pglcomponent:type=PGLComponentMetrics,name=(name)
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        unregisterMBean();
+        ObjectName objectName = new ObjectName("io.github.alexanderschuetz97.pglcomponent:type=PGLComponentMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName == null) {
+            return;
+        }
+
+        ObjectName objectName = this.objectName;
+        this.objectName = null;
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    public PGLComponentHistogram getDrawTime() {
+        return drawTime;
+    }
+
+    public PGLComponentHistogram getReadTime() {
+        return readTime;
+    }
+
+    public PGLComponentHistogram getCopyTime() {
+        return copyTime;
+    }
+
+    public PGLComponentHistogram getPushLatency() {
+        return pushLatency;
+    }
+
+    @Override
+    public long getFramesPublished() {
+        return framesPublished.sum();
+    }
+
+    @Override
+    public long getFramesDropped() {
+        return framesDropped.sum();
+    }
+
+    @Override
+    public long getDuplicatePushes() {
+        return duplicatePushes.sum();
+    }
+
+    @Override
+    public double getDrawTimeMean() {
+        return drawTime.getMean() / 1000d;
+    }
+
+    @Override
+    public long getDrawTime99() {
+        return drawTime.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getDrawTimeMax() {
+        return drawTime.getMax() / 1000;
+    }
+
+    @Override
+    public double getReadTimeMean() {
+        return readTime.getMean() / 1000d;
+    }
+
+    @Override
+    public long getReadTime99() {
+        return readTime.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getReadTimeMax() {
+        return readTime.getMax() / 1000;
+    }
+
+    @Override
+    public double getCopyTimeMean() {
+        return copyTime.getMean() / 1000d;
+    }
+
+    @Override
+    public long getCopyTime99() {
+        return copyTime.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getCopyTimeMax() {
+        return copyTime.getMax() / 1000;
+    }
+
+    @Override
+    public double getPushLatencyMean() {
+        return pushLatency.getMean() / 1000d;
+    }
+
+    @Override
+    public long getPushLatency99() {
+        return pushLatency.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getPushLatencyMax() {
+        return pushLatency.getMax() / 1000;
+    }
+
+    @Override
+    public void reset() {
+        drawTime.reset();
+        readTime.reset();
+        copyTime.reset();
+        pushLatency.reset();
+        framesPublished.reset();
+        framesDropped.reset();
+        duplicatePushes.reset();
+    }
+}
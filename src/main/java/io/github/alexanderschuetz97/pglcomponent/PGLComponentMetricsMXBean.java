@@ -0,0 +1,56 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+/**
+ * JMX view of {@link PGLComponentMetrics}. All times are in microseconds.
+ */
+public interface PGLComponentMetricsMXBean {
+
+    long getFramesPublished();
+
+    long getFramesDropped();
+
+    long getDuplicatePushes();
+
+    double getDrawTimeMean();
+
+    long getDrawTime99();
+
+    long getDrawTimeMax();
+
+    double getReadTimeMean();
+
+    long getReadTime99();
+
+    long getReadTimeMax();
+
+    double getCopyTimeMean();
+
+    long getCopyTime99();
+
+    long getCopyTimeMax();
+
+    double getPushLatencyMean();
+
+    long getPushLatency99();
+
+    long getPushLatencyMax();
+
+    void reset();
+}
@@ -0,0 +1,195 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Singleton that repaints all components attached to a {@link PGLComponentBridge} from a single thread.
+ * The thread is taken from the {@link PGLComponentExecutor} and only runs while at least 1 component is attached.
+ *
+ * Each component is repainted at its own fps. The deadlines are absolute and aligned to the fps so that
+ * components with the same fps are due at the same time. All components that are due are repainted in
+ * a single runnable on the AWT EDT Thread. The scheduler never waits for the AWT thread, if it has not painted
+ * the previous batch yet then the components that are due are skipped until their next deadline.
+ */
+public class PGLComponentPaintScheduler implements Runnable {
+
+    /**
+     * Components that are due within this many nanoseconds of each other are painted in the same tick.
+     */
+    private static final long SLACK = 500_000L;
+
+    private static PGLComponentPaintScheduler INSTANCE;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Entry> due = new ArrayList<>();
+    /**
+     * True while a batch is queued on the AWT thread.
+     */
+    private final AtomicBoolean paintPending = new AtomicBoolean(false);
+    private boolean looping = false;
+    private volatile Thread thread;
+
+    public static synchronized PGLComponentPaintScheduler getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new PGLComponentPaintScheduler();
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Can be called in any thread. Repaints the component with the image of the bridge at a given fps until
+     * the returned AtomicBoolean is set to false.
+     */
+    public AtomicBoolean schedule(PGLComponentBridge bridge, Component component, int fps) {
+        long period = 1000000000L / fps;
+        long now = System.nanoTime();
+
+        Entry entry = new Entry(bridge, component, period, now + period - Math.floorMod(now, period));
+        bridge.attach();
+
+        synchronized (this) {
+            entries.add(entry);
+            if (!looping) {
+                looping = true;
+                PGLComponentExecutor.execute(this);
+                return entry.running;
+            }
+        }
+
+        //Wake the loop up in case it is sleeping for a long time because all other components have a low fps.
+        Thread current = thread;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+
+        return entry.running;
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        boolean more = true;
+        while (more) {
+            more = tick();
+        }
+    }
+
+    /**
+     * Paints all due components and then waits until the next component is due.
+     * Returns false if there are no more components and the loop should end.
+     */
+    protected boolean tick() {
+        long next = Long.MAX_VALUE;
+        long now = System.nanoTime();
+
+        synchronized (this) {
+            Iterator<Entry> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (!entry.running.get()) {
+                    iterator.remove();
+                    entry.bridge.detach();
+                    continue;
+                }
+
+                if (entry.deadline - now <= SLACK) {
+                    due.add(entry);
+                    entry.deadline += entry.period;
+                    if (entry.deadline - now <= 0) {
+                        //We are late, skip the missed frames instead of painting them all at once.
+                        entry.deadline = now + entry.period - Math.floorMod(now, entry.period);
+                    }
+                }
+
+                if (next == Long.MAX_VALUE || entry.deadline - next < 0) {
+                    next = entry.deadline;
+                }
+            }
+
+            if (entries.isEmpty()) {
+                looping = false;
+                thread = null;
+                return false;
+            }
+        }
+
+        if (!due.isEmpty()) {
+            //If the AWT thread is busy, for example waiting for a frame or pumping a modal dialog, skip this tick.
+            if (paintPending.compareAndSet(false, true)) {
+                Entry[] batch = due.toArray(new Entry[0]);
+                SwingUtilities.invokeLater(() -> paintDue(batch));
+            }
+            due.clear();
+        }
+
+        long sleep = next - System.nanoTime();
+        if (sleep > 0) {
+            LockSupport.parkNanos(this, sleep);
+        }
+
+        return true;
+    }
+
+    /**
+     * Must be called in the awt thread
+     */
+    protected void paintDue(Entry[] batch) {
+        try {
+            for (Entry entry : batch) {
+                if (!entry.running.get()) {
+                    continue;
+                }
+
+                try {
+                    entry.bridge.push(entry.component);
+                } catch (Exception e) {
+                    //TODO LOGGING
+                    entry.running.set(false);
+                }
+            }
+        } finally {
+            paintPending.set(false);
+        }
+    }
+
+    /**
+     * A component that is repainted by the scheduler.
+     */
+    protected static class Entry {
+        protected final PGLComponentBridge bridge;
+        protected final Component component;
+        protected final long period;
+        protected final AtomicBoolean running = new AtomicBoolean(true);
+        protected long deadline;
+
+        public Entry(PGLComponentBridge bridge, Component component, long period, long deadline) {
+            this.bridge = bridge;
+            this.component = component;
+            this.period = period;
+            this.deadline = deadline;
+        }
+    }
+}
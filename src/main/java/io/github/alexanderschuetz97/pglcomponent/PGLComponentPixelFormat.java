@@ -0,0 +1,132 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2ES2;
+import com.jogamp.opengl.GL2GL3;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Pixel formats the {@link PGLComponentBridge} can use to transfer pixels from opengl to AWT.
+ * Each format reads the pixels from opengl in exactly the memory layout of the BufferedImage type,
+ * so no conversion is done on the CPU.
+ *
+ * RGB565 and GRAY transfer 2 and 1 bytes per pixel, which is meant for remote displays (X11 forwarding, VNC)
+ * where the amount of pixels that have to be drawn is the bottleneck. They are converted on the graphics card before they are read.
+ */
+public enum PGLComponentPixelFormat {
+
+    /**
+     * 3 bytes per pixel. Uses BufferedImage.TYPE_3BYTE_BGR.
+     * Most Java2D pipelines have to convert this format each time it is drawn.
+     */
+    BGR(BufferedImage.TYPE_3BYTE_BGR, GL.GL_BGR, GL.GL_UNSIGNED_BYTE, 3, GL.GL_RGBA8),
+
+    /**
+     * 1 int per pixel. Uses BufferedImage.TYPE_INT_RGB. The alpha channel of the sketch is ignored.
+     */
+    INT_RGB(BufferedImage.TYPE_INT_RGB, GL.GL_BGRA, GL2GL3.GL_UNSIGNED_INT_8_8_8_8_REV, 4, GL.GL_RGBA8),
+
+    /**
+     * 1 int per pixel. Uses BufferedImage.TYPE_INT_ARGB_PRE.
+     * The alpha channel of the back buffer is kept, so the sketch must make sure that it is opaque where it should be.
+     */
+    INT_ARGB_PRE(BufferedImage.TYPE_INT_ARGB_PRE, GL.GL_BGRA, GL2GL3.GL_UNSIGNED_INT_8_8_8_8_REV, 4, GL.GL_RGBA8),
+
+    /**
+     * 1 short per pixel with 5 bits red, 6 bits green and 5 bits blue. Uses BufferedImage.TYPE_USHORT_565_RGB.
+     * The frame is converted by blitting it into a RGB565 framebuffer, which requires OpenGL 4.1 or ARB_ES2_compatibility.
+     * Otherwise the driver converts it while reading.
+     */
+    RGB565(BufferedImage.TYPE_USHORT_565_RGB, GL.GL_RGB, GL.GL_UNSIGNED_SHORT_5_6_5, 2, GL.GL_RGB565),
+
+    /**
+     * 1 byte per pixel with the luma of the frame. Uses BufferedImage.TYPE_BYTE_GRAY.
+     * The frame is converted by a shader that requires GLSL 1.30, the bridge falls back to INT_RGB if it is not supported.
+     */
+    GRAY(BufferedImage.TYPE_BYTE_GRAY, GL2ES2.GL_RED, GL.GL_UNSIGNED_BYTE, 1, GL2GL3.GL_R8);
+
+    private final int imageType;
+    private final int glFormat;
+    private final int glType;
+    private final int bytesPerPixel;
+    private final int glInternalFormat;
+
+    PGLComponentPixelFormat(int imageType, int glFormat, int glType, int bytesPerPixel, int glInternalFormat) {
+        this.imageType = imageType;
+        this.glFormat = glFormat;
+        this.glType = glType;
+        this.bytesPerPixel = bytesPerPixel;
+        this.glInternalFormat = glInternalFormat;
+    }
+
+    public int getImageType() {
+        return imageType;
+    }
+
+    public int getGlFormat() {
+        return glFormat;
+    }
+
+    public int getGlType() {
+        return glType;
+    }
+
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+
+    /**
+     * Internal format of the framebuffer the frame is converted into before it is read.
+     */
+    public int getGlInternalFormat() {
+        return glInternalFormat;
+    }
+
+    /**
+     * Returns true if the frame has to be converted on the graphics card before it can be read in this format.
+     */
+    public boolean isConvertedOnGPU() {
+        return glInternalFormat != GL.GL_RGBA8;
+    }
+
+    /**
+     * Returns the format that the current Java2D pipeline can draw the fastest.
+     * This is the format that matches images created by the default screen device.
+     */
+    public static PGLComponentPixelFormat fastest() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return INT_RGB;
+        }
+
+        try {
+            GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+            switch (config.createCompatibleImage(1, 1).getType()) {
+                case BufferedImage.TYPE_3BYTE_BGR:
+                    return BGR;
+                default:
+                    return INT_RGB;
+            }
+        } catch (Exception ex) {
+            return INT_RGB;
+        }
+    }
+}
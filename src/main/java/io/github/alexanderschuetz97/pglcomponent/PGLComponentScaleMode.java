@@ -0,0 +1,104 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+/**
+ * How the {@link PGLComponentBridge} draws a frame onto a component that has a different size than the frame.
+ */
+public enum PGLComponentScaleMode {
+
+    /**
+     * The frame is drawn unscaled in the top left corner. Parts that do not fit are cut off.
+     */
+    NONE,
+
+    /**
+     * The frame is scaled as large as possible while keeping its aspect ratio and centered. The remaining area is filled with the background color.
+     */
+    FIT,
+
+    /**
+     * The frame is scaled to cover the entire component while keeping its aspect ratio and centered. Parts that do not fit are cut off.
+     */
+    FILL,
+
+    /**
+     * The frame is scaled to the size of the component, ignoring its aspect ratio.
+     */
+    STRETCH,
+
+    /**
+     * The frame is scaled by the largest whole number that fits and centered. Keeps pixel art sharp with nearest neighbor interpolation.
+     */
+    INTEGER;
+
+    /**
+     * Calculates which part of the frame is drawn to which part of the component.
+     * Writes source x, y, width, height followed by destination x, y, width, height into out.
+     */
+    public void layout(int imageWidth, int imageHeight, int componentWidth, int componentHeight, int[] out) {
+        int sx = 0, sy = 0, sw = imageWidth, sh = imageHeight;
+        int dx = 0, dy = 0, dw = imageWidth, dh = imageHeight;
+
+        if (imageWidth > 0 && imageHeight > 0 && componentWidth > 0 && componentHeight > 0) {
+            double scaleX = (double) componentWidth / imageWidth;
+            double scaleY = (double) componentHeight / imageHeight;
+
+            switch (this) {
+                case FIT:
+                    double fit = Math.min(scaleX, scaleY);
+                    dw = (int) Math.round(imageWidth * fit);
+                    dh = (int) Math.round(imageHeight * fit);
+                    dx = (componentWidth - dw) / 2;
+                    dy = (componentHeight - dh) / 2;
+                    break;
+                case FILL:
+                    double fill = Math.max(scaleX, scaleY);
+                    sw = Math.min(imageWidth, (int) Math.round(componentWidth / fill));
+                    sh = Math.min(imageHeight, (int) Math.round(componentHeight / fill));
+                    sx = (imageWidth - sw) / 2;
+                    sy = (imageHeight - sh) / 2;
+                    dw = componentWidth;
+                    dh = componentHeight;
+                    break;
+                case STRETCH:
+                    dw = componentWidth;
+                    dh = componentHeight;
+                    break;
+                case INTEGER:
+                    int factor = Math.max(1, (int) Math.floor(Math.min(scaleX, scaleY)));
+                    dw = imageWidth * factor;
+                    dh = imageHeight * factor;
+                    dx = (componentWidth - dw) / 2;
+                    dy = (componentHeight - dh) / 2;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        out[0] = sx;
+        out[1] = sy;
+        out[2] = sw;
+        out[3] = sh;
+        out[4] = dx;
+        out[5] = dy;
+        out[6] = dw;
+        out[7] = dh;
+    }
+}
@@ -0,0 +1,216 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLContext;
+import com.jogamp.opengl.GLDrawableFactory;
+import com.jogamp.opengl.GLOffscreenAutoDrawable;
+import com.jogamp.opengl.GLProfile;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Singleton master OpenGL context that all sketches can share their textures, buffers and shaders with.
+ *
+ * If enabled before a sketch is started then the sketch's context is created as shared context of a hidden 1x1 master drawable.
+ * OpenGL objects created by one sketch can then be used by all other sketches.
+ * The master drawable is reference counted and destroyed once the last sketch and the last resource using it are disposed.
+ *
+ * Note: Processing itself caches textures, fonts and shapes per sketch, enabling this does not change that.
+ * To upload an asset only once use {@link #acquire(Object, Supplier, BiConsumer)} in all sketches that need it.
+ */
+public class PGLComponentSharedContext {
+
+    private static boolean enabled = false;
+    private static GLOffscreenAutoDrawable master;
+    private static int references = 0;
+    private static final Map<Object, Resource<?>> resources = new HashMap<>();
+
+    /**
+     * Enables or disables context sharing for all sketches that are started afterwards.
+     * Sketches that are already running are not affected. Default is false.
+     */
+    public static synchronized void setEnabled(boolean enabled) {
+        PGLComponentSharedContext.enabled = enabled;
+    }
+
+    public static synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the master drawable a new sketch should share its context with and increments the reference count.
+     * Returns null if sharing is disabled.
+     * The master is created outside of the lock, so other sketches are not blocked while the native context is created.
+     */
+    protected static GLAutoDrawable retainContext(GLProfile profile, GLCapabilities capabilities) {
+        synchronized (PGLComponentSharedContext.class) {
+            if (!enabled) {
+                return null;
+            }
+
+            if (master != null) {
+                references++;
+                return master;
+            }
+        }
+
+        //If this throws nothing was counted yet.
+        GLOffscreenAutoDrawable created = GLDrawableFactory.getFactory(profile).createOffscreenAutoDrawable(null, capabilities, null, 1, 1);
+        //Creates the context
+        created.display();
+
+        GLAutoDrawable existing;
+        synchronized (PGLComponentSharedContext.class) {
+            references++;
+            if (master == null) {
+                master = created;
+                return created;
+            }
+            existing = master;
+        }
+
+        //Another sketch created the master first.
+        created.destroy();
+        return existing;
+    }
+
+    /**
+     * Decrements the reference count and destroys the master drawable once it reaches 0.
+     */
+    protected static synchronized void releaseContext() {
+        if (references <= 0) {
+            return;
+        }
+
+        if (--references > 0) {
+            return;
+        }
+
+        master.destroy();
+        master = null;
+    }
+
+    /**
+     * Returns the shared resource for the given key. If there is none, then it is created by the given supplier.
+     * Each call must be matched by a call to {@link #release(Object)}. Once the last user released the resource
+     * it is disposed by the given dispose function using the master context.
+     *
+     * Must be called in the opengl thread of a sketch that was started while sharing was enabled,
+     * for example in setup or draw, because the supplier may need a current context.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T acquire(Object key, Supplier<T> create, BiConsumer<GL, T> dispose) {
+        synchronized (PGLComponentSharedContext.class) {
+            Resource<T> resource = (Resource<T>) resources.get(key);
+            if (resource != null) {
+                resource.count++;
+                return resource.value;
+            }
+
+            if (master == null) {
+                throw new IllegalStateException("There is no shared context, enable sharing before starting the sketch!");
+            }
+
+            //The resource holds a reference to the master, take it now so the master outlives the supplier.
+            references++;
+        }
+
+        //Not created while holding the lock, it may take long and the other sketches would have to wait for it.
+        T value;
+        try {
+            value = create.get();
+        } catch (RuntimeException | Error e) {
+            releaseContext();
+            throw e;
+        }
+
+        T existing;
+        synchronized (PGLComponentSharedContext.class) {
+            Resource<T> resource = (Resource<T>) resources.get(key);
+            if (resource == null) {
+                resource = new Resource<>(value, dispose);
+                resources.put(key, resource);
+                resource.count++;
+                return value;
+            }
+
+            resource.count++;
+            existing = resource.value;
+        }
+
+        //Another sketch created the resource first, our context is current and shared so we can dispose ours.
+        try {
+            dispose.accept(GLContext.getCurrentGL(), value);
+        } finally {
+            releaseContext();
+        }
+        return existing;
+    }
+
+    /**
+     * Releases a shared resource acquired with {@link #acquire(Object, Supplier, BiConsumer)}.
+     * Can be called in any thread.
+     */
+    public static void release(Object key) {
+        Resource<?> resource;
+        GLAutoDrawable drawable;
+        synchronized (PGLComponentSharedContext.class) {
+            resource = resources.get(key);
+            if (resource == null || --resource.count > 0) {
+                return;
+            }
+
+            resources.remove(key);
+            drawable = master;
+        }
+
+        try {
+            drawable.invoke(true, d -> {
+                resource.dispose(d.getGL());
+                return true;
+            });
+        } finally {
+            releaseContext();
+        }
+    }
+
+    /**
+     * A shared resource and the amount of users.
+     */
+    protected static class Resource<T> {
+        protected final T value;
+        protected final BiConsumer<GL, T> dispose;
+        protected int count;
+
+        public Resource(T value, BiConsumer<GL, T> dispose) {
+            this.value = value;
+            this.dispose = dispose;
+        }
+
+        protected void dispose(GL gl) {
+            dispose.accept(gl, value);
+        }
+    }
+}
@@ -32,6 +32,7 @@
 
 package io.github.alexanderschuetz97.pglcomponent;
 
+import com.jogamp.opengl.GLAnimatorControl;
 import com.jogamp.opengl.GLAutoDrawable;
 import com.jogamp.opengl.GLCapabilities;
 import com.jogamp.opengl.GLDrawableFactory;
@@ -39,11 +40,11 @@ import com.jogamp.opengl.GLEventListener;
 import com.jogamp.opengl.GLOffscreenAutoDrawable;
 import com.jogamp.opengl.GLProfile;
 import com.jogamp.opengl.awt.GLCanvas;
-import com.jogamp.opengl.util.FPSAnimator;
 import processing.core.PApplet;
 import processing.core.PConstants;
 import processing.core.PImage;
 import processing.core.PSurface;
+import processing.event.Event;
 import processing.event.KeyEvent;
 import processing.event.MouseEvent;
 import processing.opengl.PGL;
@@ -57,6 +58,14 @@ import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -65,6 +74,12 @@ import java.util.concurrent.atomic.AtomicReference;
  * Some hooks that don't make sense for a Component such as "setTitle" are noop.
  */
 public class PGLComponentSurface implements PSurface {
+
+    /**
+     * PApplet.redraw is protected, we need it to know if a sketch that called noLoop wants to be drawn.
+     */
+    private static final Field REDRAW = findRedrawField();
+
     protected final GLProfile profile = GLProfile.get(GLProfile.GL2GL3);
     protected PGLComponentBridge bridge;
     protected GLCapabilities capabilities = new GLCapabilities(profile);
@@ -76,10 +91,90 @@ public class PGLComponentSurface implements PSurface {
     protected PGLComponentInfo info;
     protected PGLComponentPGL pgl;
     protected PApplet sketch;
-    protected FPSAnimator animator;
-    protected int fps = 60;
-    protected boolean paused = false;
-    protected boolean stopped = true;
+    /**
+     * Target frame rate, read by the animator before every frame so it can be changed while the sketch is running.
+     */
+    protected volatile int fps = 60;
+    protected volatile boolean paused = false;
+    protected volatile boolean stopped = true;
+
+    /**
+     * If true the sketch is only drawn when it is looping, redraw was called, or it was resized.
+     */
+    protected volatile boolean renderOnDemand = false;
+    protected final AtomicBoolean redrawRequested = new AtomicBoolean(true);
+
+    /**
+     * Animator set by the user that should drive this surface instead of its own animator.
+     */
+    protected PGLComponentAnimator sharedAnimator;
+
+    /**
+     * Animator with a single render thread that drives this surface if no shared animator was set.
+     */
+    protected PGLComponentAnimator ownAnimator;
+
+    /**
+     * The PGLComponentAnimator that currently drives this surface. Null while stopped.
+     */
+    protected volatile PGLComponentAnimator loop;
+
+    /**
+     * Registered on the drawable while the surface is started so JOGL knows that it is animated by another thread.
+     * Without it a GLCanvas draws the sketch in the AWT thread whenever it is repainted.
+     */
+    protected final AnimatorControl animatorControl = new AnimatorControl();
+
+    /**
+     * The render thread that drew the last frame.
+     */
+    protected volatile Thread renderThread;
+
+    /**
+     * True if this surface holds a reference to the {@link PGLComponentSharedContext}.
+     */
+    protected boolean sharedContext = false;
+
+    /**
+     * If true input events are collected and posted to the sketch at the start of the next frame,
+     * consecutive move, drag and wheel events are merged into 1 event.
+     */
+    protected volatile boolean coalesceInput = false;
+
+    /**
+     * Guards pendingInput and eventPool.
+     */
+    protected final Object inputLock = new Object();
+
+    /**
+     * Events of the AWT thread in the order they happened, posted to the sketch at the start of the next frame.
+     */
+    protected ArrayList<Event> pendingInput = new ArrayList<>();
+
+    /**
+     * Events posted in the current frame. Only used by the opengl thread.
+     */
+    protected ArrayList<Event> postedInput = new ArrayList<>();
+
+    /**
+     * Move, drag and wheel events that the sketch is done with.
+     */
+    protected final ArrayDeque<PooledMouseEvent> eventPool = new ArrayDeque<>();
+
+    /**
+     * Maximum amount of events kept in the pool.
+     */
+    private static final int EVENT_POOL_SIZE = 64;
+
+    /**
+     * Maximum amount of events queued for the next frame before they are posted immediately.
+     */
+    private static final int MAX_PENDING_INPUT = 256;
+
+    /**
+     * Tiled captures that are rendered by the opengl thread before the next frame.
+     */
+    protected final Queue<PGLComponentTiledCapture> captures = new ConcurrentLinkedQueue<>();
 
     public PGLComponentSurface(PGLComponentIndirectRenderer graphics, boolean direct) {
         pgl = (PGLComponentPGL) graphics.pgl;
@@ -96,24 +191,43 @@ public class PGLComponentSurface implements PSurface {
         this.sketch = sketch;
 
         bridge = new PGLComponentBridge();
+        bridge.setHeadless(!graphics.displayable());
+        bridge.setSynchronousReadback(renderOnDemand);
+        bridge.setRestoreState(graphics::restoreState);
         info = new PGLComponentInfo();
         info.setRenderingBridge(bridge);
         info.setSketch(sketch);
         info.setSurface(this);
 
 
+        //Like the default Processing surface, smooth is implemented by a multisampled drawable. The bridge resolves it before reading,
+        //which costs a blit every frame, so only sketches that explicitly call smooth(n) with n > 1 get one.
+        int samples = sketch.sketchSmooth() > 1 ? PGL.smoothToSamples(sketch.sketchSmooth()) : 1;
+        if (samples > 1) {
+            capabilities.setSampleBuffers(true);
+            capabilities.setNumSamples(samples);
+        }
+
+        //The master is created with the same capabilities as the drawables sharing it.
+        GLAutoDrawable shared = PGLComponentSharedContext.retainContext(profile, capabilities);
+        sharedContext = shared != null;
+
         if (direct) {
             canvas = new GLCanvas(capabilities);
             canvas.setSize(sketch.width, sketch.height);
             canvas.setPreferredSize(new Dimension(sketch.width, sketch.height));
+            if (shared != null) {
+                canvas.setSharedAutoDrawable(shared);
+            }
             gldrawable = canvas;
         } else {
             offscreen = GLDrawableFactory.getFactory(profile).createOffscreenAutoDrawable(null, capabilities, null, sketch.width, sketch.height);
+            if (shared != null) {
+                offscreen.setSharedAutoDrawable(shared);
+            }
             gldrawable = offscreen;
         }
 
-        animator = new FPSAnimator(gldrawable, fps);
-        gldrawable.setAnimator(animator);
         info.setDirect(canvas);
 
         gldrawable.addGLEventListener(new DrawListener());
@@ -254,22 +368,135 @@ public class PGLComponentSurface implements PSurface {
 
     private final AtomicReference<Dimension> resize = new AtomicReference<>();
 
+    /**
+     * The offscreen drawable is only shrunk once the sketch was not resized for this many nanoseconds.
+     */
+    private static final long SHRINK_DELAY = 500_000_000L;
+
+    /**
+     * System.nanoTime() of the last resize.
+     */
+    private long lastResize;
+
     protected void checkSketchSize() {
+        //Only the latest size counts, sizes set in between 2 frames are never applied.
         Dimension dim = resize.getAndSet(null);
 
-        if (dim == null) {
+        if (dim != null) {
+            sketch.width = dim.width;
+            sketch.height = dim.height;
+            graphics.setSize(sketch.width, sketch.height);
+            lastResize = System.nanoTime();
+        }
+
+        if (direct) {
             return;
         }
 
-        sketch.width = dim.width;
-        sketch.height = dim.height;
-        graphics.setSize(sketch.width, sketch.height);
+        //The sketch renders into the bottom left corner of the offscreen drawable which may be larger than the sketch.
+        //It grows with some spare capacity so that dragging a window does not resize it every frame
+        //and only shrinks back once the size has settled.
+        int surfaceWidth = offscreen.getSurfaceWidth();
+        int surfaceHeight = offscreen.getSurfaceHeight();
+        if (sketch.width > surfaceWidth || sketch.height > surfaceHeight) {
+            //EXPENSIVE CALL only do when needed
+            offscreen.setSurfaceSize(
+                    PGLComponentBridge.capacity(Math.max(surfaceWidth, sketch.width + sketch.width / 4)),
+                    PGLComponentBridge.capacity(Math.max(surfaceHeight, sketch.height + sketch.height / 4)));
+            return;
+        }
 
-        if (gldrawable.getSurfaceWidth() != sketch.width || gldrawable.getSurfaceHeight() != sketch.height) {
-            if (!direct) {
-                //EXPENSIVE CALL only do when needed
-                offscreen.setSurfaceSize(sketch.width, sketch.height);
-            }
+        int settledWidth = PGLComponentBridge.capacity(sketch.width);
+        int settledHeight = PGLComponentBridge.capacity(sketch.height);
+        if ((surfaceWidth != settledWidth || surfaceHeight != settledHeight) && System.nanoTime() - lastResize > SHRINK_DELAY) {
+            offscreen.setSurfaceSize(settledWidth, settledHeight);
+        }
+    }
+
+    /**
+     * The render scale is only changed after this many frames so the frame time can settle.
+     */
+    private static final int RESCALE_FRAMES = 8;
+
+    /**
+     * Bounds of the render scale for dynamic resolution. Both are 1 if it is disabled.
+     */
+    protected volatile float minRenderScale = 1;
+    protected volatile float maxRenderScale = 1;
+
+    /**
+     * Moving average of the frame time in nanoseconds and the frames since the render scale was last changed.
+     * Only used by the opengl thread.
+     */
+    private double averageFrameTime;
+    private int framesSinceRescale;
+
+    /**
+     * Enables dynamic resolution. The sketch is rendered at a lower resolution between minScale and maxScale
+     * times its size whenever it can not hold its frame rate, and the frames are scaled up when they are drawn.
+     * The sketch keeps its size and mouse events keep their coordinates.
+     * Note that loadPixels, get and filter only see the rendered part of the sketch while it is scaled down.
+     * Call with 1, 1 to disable it again. Only supported by indirect canvases.
+     */
+    public void setDynamicResolution(float minScale, float maxScale) {
+        if (direct) {
+            throw new IllegalStateException("Dynamic resolution is not supported by direct canvases");
+        }
+
+        if (!(minScale > 0 && minScale <= maxScale && maxScale <= 1)) {
+            throw new IllegalArgumentException("Scales must satisfy 0 < minScale <= maxScale <= 1");
+        }
+
+        minRenderScale = minScale;
+        maxRenderScale = maxScale;
+    }
+
+    /**
+     * Returns the fraction of the sketch size that was rendered in the last frame.
+     */
+    public float getRenderScale() {
+        return graphics.getRenderScale();
+    }
+
+    /**
+     * Lowers the render scale if the frame time exceeds the frame interval and raises it again once there is enough headroom.
+     * Must be called in the opengl thread after the frame was drawn.
+     */
+    protected void adaptResolution(long frameTime) {
+        float min = minRenderScale;
+        float max = maxRenderScale;
+        float scale = graphics.getRenderScale();
+        if (min == 1 && scale == 1) {
+            return;
+        }
+
+        if (scale < min || scale > max) {
+            //Bounds were changed.
+            graphics.setRenderScale(Math.max(min, Math.min(max, scale)));
+            framesSinceRescale = 0;
+            return;
+        }
+
+        averageFrameTime = framesSinceRescale == 0 ? frameTime : averageFrameTime * 0.875 + frameTime * 0.125;
+        if (++framesSinceRescale < RESCALE_FRAMES) {
+            return;
+        }
+
+        //Leave some time for the AWT thread and the animator.
+        double budget = getFrameInterval() * 0.9;
+        float next = scale;
+        if (averageFrameTime > budget) {
+            //The cost of a frame is roughly proportional to the amount of pixels.
+            next = (float) (scale * Math.sqrt(budget / averageFrameTime));
+        } else if (averageFrameTime < budget * 0.7) {
+            //Raise slowly, dropping a resolution step is cheaper than dropping frames.
+            next = scale * 1.05f;
+        }
+
+        next = Math.max(min, Math.min(max, next));
+        framesSinceRescale = 0;
+        if (Math.abs(next - scale) >= 0.01f || next == max || next == min) {
+            graphics.setRenderScale(next);
         }
     }
 
@@ -283,28 +510,226 @@ public class PGLComponentSurface implements PSurface {
 
         //Set it next frame...
         resize.set(new Dimension(width, height));
+        requestRedraw();
     }
 
+    /**
+     * Can be called in any thread. The animator picks the new frame rate up for the next frame.
+     */
     public void setFrameRate(float fps) {
-        this.fps = (int) fps;
-        this.fps = Math.max(this.fps, 1);
+        this.fps = Math.max((int) fps, 1);
+        //The animator may be sleeping for a long time if the frame rate was low.
+        wakeUp();
+    }
+
+    /**
+     * Enables or disables render on demand.
+     * In this mode the sketch is not drawn at a fixed rate. It is only drawn while it is looping,
+     * after redraw was called, after it was resized or after requestRedraw was called.
+     * A sketch that called noLoop therefore uses no CPU or GPU time while nothing happens.
+     * Input events wake the sketch up so event handlers that call redraw are drawn immediately.
+     * Looping sketches are still limited to their frame rate.
+     * The pixel buffer objects of the bridge are not used in this mode, so each frame is shown as soon as it is drawn.
+     *
+     * Can be called in any thread. Default is false.
+     */
+    public void setRenderOnDemand(boolean renderOnDemand) {
+        //The animator checks this before every frame.
+        this.renderOnDemand = renderOnDemand;
+        PGLComponentBridge bridge = this.bridge;
+        if (bridge != null) {
+            bridge.setSynchronousReadback(renderOnDemand);
+        }
+        wakeUp();
+    }
+
+    public boolean isRenderOnDemand() {
+        return renderOnDemand;
+    }
+
+    /**
+     * Lets the given animator drive this surface instead of its own animator.
+     * Use this to draw many sketches from a single thread, for example {@link PGLComponentAnimator#getShared()}.
+     * null reverts to the own animator of this surface.
+     *
+     * Can be called in any thread.
+     */
+    public void setAnimator(PGLComponentAnimator animator) {
         PGLComponentExecutor.execute(() -> {
             synchronized (PGLComponentSurface.this) {
+                this.sharedAnimator = animator;
                 if (!stopped) {
-                    animator.stop();
-                }
-                animator.setFPS(this.fps);
-                if (!stopped) {
-                    animator.start();
-                }
-
-                if (paused) {
-                    animator.pause();
+                    applyLoop();
                 }
             }
         });
     }
 
+    /**
+     * Can be called in any thread. Draws the sketch once in render on demand mode, even if it did not call redraw.
+     */
+    public void requestRedraw() {
+        redrawRequested.set(true);
+        wakeUp();
+    }
+
+    /**
+     * Wakes up the animator so it checks if the sketch has to be drawn.
+     */
+    protected void wakeUp() {
+        PGLComponentAnimator current = loop;
+        if (current != null) {
+            current.wakeUp();
+        }
+    }
+
+    /**
+     * Can be called in any thread. Renders the current frame of the sketch at the given resolution, which may be far larger than
+     * the surface or even the maximum texture size, and streams it into the output.
+     * The image is rendered in tiles of the size of the surface, each with a projection that only covers its part of the image.
+     * The sketch draws the same frame once per tile with the same frameCount, so it has to clear the background every frame and
+     * should not depend on the time. Strokes and text keep their size in pixels, so they are thinner at higher resolutions.
+     * If the aspect ratio differs from the sketch the image is stretched.
+     *
+     * The future is completed by the {@link PGLComponentExecutor} once the output has been written.
+     */
+    public CompletableFuture<Void> capture(int width, int height, PGLComponentCaptureOutput output) {
+        PGLComponentTiledCapture capture = new PGLComponentTiledCapture(width, height, output);
+        captures.add(capture);
+        requestRedraw();
+        return capture.getFuture();
+    }
+
+    /**
+     * Renders all pending captures. Must be called in the opengl thread before the frame is drawn.
+     */
+    protected void runCaptures(GLAutoDrawable drawable) {
+        if (sketch.frameCount <= 0) {
+            //Setup was not called yet.
+            return;
+        }
+
+        //Captures are always rendered at full resolution.
+        float scale = graphics.getRenderScale();
+        graphics.setRenderScale(1);
+        try {
+            PGLComponentTiledCapture capture;
+            while ((capture = captures.poll()) != null) {
+                capture.run(drawable.getGL(), sketch, graphics, bridge, sketch.width, sketch.height);
+            }
+        } finally {
+            graphics.setRenderScale(scale);
+        }
+    }
+
+    /**
+     * Returns the PGLComponentAnimator that should drive this surface.
+     */
+    protected synchronized PGLComponentAnimator selectLoop() {
+        if (sharedAnimator != null) {
+            return sharedAnimator;
+        }
+
+        if (ownAnimator == null) {
+            ownAnimator = new PGLComponentAnimator(1);
+        }
+
+        return ownAnimator;
+    }
+
+    /**
+     * Hands the surface over to the animator selected by the current settings.
+     */
+    protected synchronized void applyLoop() {
+        PGLComponentAnimator next = selectLoop();
+        if (next == loop) {
+            wakeUp();
+            return;
+        }
+
+        loop.remove(this);
+        loop = next;
+        loop.add(this);
+    }
+
+    /**
+     * Returns the time between 2 frames in nanoseconds.
+     */
+    protected long getFrameInterval() {
+        return 1000000000L / fps;
+    }
+
+    /**
+     * Returns true if the sketch has to be drawn now. Used by {@link PGLComponentAnimator}.
+     */
+    protected boolean isDisplayDue() {
+        if (paused || stopped) {
+            return false;
+        }
+
+        if (!renderOnDemand || redrawRequested.getAndSet(false) || sketch.isLooping() || resize.get() != null) {
+            return true;
+        }
+
+        synchronized (inputLock) {
+            if (!pendingInput.isEmpty()) {
+                //The events are only posted while drawing, the handlers may call redraw.
+                return true;
+            }
+        }
+
+        if (REDRAW == null) {
+            //Cant know, so always draw.
+            return true;
+        }
+
+        try {
+            return REDRAW.getBoolean(sketch);
+        } catch (IllegalAccessException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Draws the sketch in the calling thread. Used by {@link PGLComponentAnimator}.
+     */
+    protected void display() {
+        renderThread = Thread.currentThread();
+        gldrawable.display();
+    }
+
+    /**
+     * Called by the animator after drawing the sketch threw and it was removed from the animator.
+     * Stops the surface, so it can be started again, and reports the exception to the uncaught exception handler
+     * of the animator control or else of the render thread, like an animator thread that died from it would.
+     */
+    protected void displayFailed(Throwable throwable) {
+        stopThread();
+
+        GLAnimatorControl.UncaughtExceptionHandler handler = animatorControl.getUncaughtExceptionHandler();
+        try {
+            if (handler != null) {
+                handler.uncaughtException(animatorControl, gldrawable, throwable);
+                return;
+            }
+
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, throwable);
+        } catch (Exception e) {
+            //TODO LOGGING
+        }
+    }
+
+    private static Field findRedrawField() {
+        try {
+            Field field = PApplet.class.getDeclaredField("redraw");
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     public void setCursor(int kind) {
         //No
     }
@@ -323,7 +748,22 @@ public class PGLComponentSurface implements PSurface {
 
     public void onDispose() {
         bridge.onDispose();
+        PGLComponentTiledCapture capture;
+        while ((capture = captures.poll()) != null) {
+            capture.getFuture().completeExceptionally(new IllegalStateException("Sketch was disposed"));
+        }
+
         gldrawable.destroy();
+
+        synchronized (this) {
+            if (!sharedContext) {
+                return;
+            }
+            sharedContext = false;
+        }
+
+        //Must happen after our context is gone, the master context has to outlive all shared contexts.
+        PGLComponentSharedContext.releaseContext();
     }
 
     public synchronized void startThread() {
@@ -331,16 +771,19 @@ public class PGLComponentSurface implements PSurface {
             return;
         }
         stopped = false;
-        animator.start();
+        if (gldrawable != null) {
+            gldrawable.setAnimator(animatorControl);
+        }
+        loop = selectLoop();
+        loop.add(this);
     }
 
     public synchronized void pauseThread() {
         if (stopped) {
             return;
         }
+        //The animator checks this before every frame.
         paused = true;
-
-        animator.pause();
     }
 
     public synchronized void resumeThread() {
@@ -348,8 +791,7 @@ public class PGLComponentSurface implements PSurface {
             return;
         }
         paused = false;
-
-        animator.resume();
+        wakeUp();
     }
 
     public synchronized boolean stopThread() {
@@ -358,7 +800,12 @@ public class PGLComponentSurface implements PSurface {
         }
         paused = false;
         stopped = true;
-        return animator.stop();
+        loop.remove(this);
+        loop = null;
+        if (gldrawable != null) {
+            gldrawable.setAnimator(null);
+        }
+        return true;
     }
 
     public synchronized boolean isStopped() {
@@ -368,14 +815,23 @@ public class PGLComponentSurface implements PSurface {
 
     class DrawListener implements GLEventListener {
         public void display(GLAutoDrawable drawable) {
+            long frameStart = System.nanoTime();
             checkSketchSize();
 
 
 
             if (!sketch.finished) {
                 pgl.getGL(drawable);
+                if (!captures.isEmpty()) {
+                    runCaptures(drawable);
+                }
                 int pframeCount = sketch.frameCount;
+                postInput();
+                long drawStart = System.nanoTime();
                 sketch.handleDraw();
+                bridge.getMetrics().getDrawTime().record(System.nanoTime() - drawStart);
+                //A looping sketch handles its events while drawing, otherwise postEvent already handled them.
+                recycleInput(pframeCount != sketch.frameCount || !sketch.isLooping());
                 if (pframeCount == sketch.frameCount || sketch.finished) {
                     pgl.beginRender();
                     pgl.endRender(sketch.sketchWindowColor());
@@ -385,18 +841,19 @@ public class PGLComponentSurface implements PSurface {
 
             if (sketch.exitCalled()) {
                 PGLComponentIndirectRenderer.completeAllPixelTransfers();
-                bridge.pull(drawable.getGL(), drawable.getSurfaceWidth(), drawable.getSurfaceHeight());
+                bridge.pull(drawable.getGL(), graphics.getRenderWidth(), graphics.getRenderHeight(), sketch.width, sketch.height);
                 sketch.dispose();
-                animator.stop();
+                stopThread();
                 drawable.destroy();
                 return;
             }
 
-            bridge.pull(drawable.getGL(), drawable.getSurfaceWidth(), drawable.getSurfaceHeight());
+            bridge.pull(drawable.getGL(), graphics.getRenderWidth(), graphics.getRenderHeight(), sketch.width, sketch.height);
+            adaptResolution(System.nanoTime() - frameStart);
         }
 
         public void dispose(GLAutoDrawable drawable) {
-
+            bridge.disposeGL(drawable.getGL());
         }
 
         public void init(GLAutoDrawable drawable) {
@@ -415,6 +872,10 @@ public class PGLComponentSurface implements PSurface {
         public void reshape(GLAutoDrawable drawable, int x, int y, int w, int h) {
             pgl.resetFBOLayer();
             pgl.getGL(drawable);
+            if (!direct) {
+                //The surface sets the size of the offscreen drawable itself, it is larger than the sketch.
+                return;
+            }
             float scale = PApplet.platform == PConstants.MACOSX ?
                     getCurrentPixelScale() : getPixelScale();
             setSize((int) (w / scale), (int) (h / scale));
@@ -441,9 +902,15 @@ public class PGLComponentSurface implements PSurface {
                         InputEvent.META_MASK |
                         InputEvent.ALT_MASK);
 
-        sketch.postEvent(new KeyEvent(event, event.getWhen(),
+        KeyEvent keyEvent = new KeyEvent(event, event.getWhen(),
                 peAction, peModifiers,
-                event.getKeyChar(), event.getKeyCode()));
+                event.getKeyChar(), event.getKeyCode());
+
+        //Goes through the same queue as the mouse events so the sketch sees them in the right order.
+        if (!coalesceInput || !queueInput(keyEvent)) {
+            sketch.postEvent(keyEvent);
+        }
+        wakeUp();
     }
 
     protected void nativeMouseEvent(java.awt.event.MouseEvent nativeEvent) {
@@ -504,11 +971,322 @@ public class PGLComponentSurface implements PSurface {
             }
         }
 
-        sketch.postEvent(new MouseEvent(nativeEvent, nativeEvent.getWhen(),
-                peAction, peModifiers,
-                (int)(nativeEvent.getX() / getPixelScale()),
-                (int)(nativeEvent.getY() / getPixelScale()),
-                peButton,
-                peCount));
+        //The component may show the frame scaled.
+        Point position = bridge.toFrame(nativeEvent.getComponent(), nativeEvent.getX(), nativeEvent.getY());
+        int peX = (int)(position.x / getPixelScale());
+        int peY = (int)(position.y / getPixelScale());
+
+        if (!coalesceInput || !queueMouseEvent(nativeEvent, peAction, peModifiers, peX, peY, peButton, peCount)) {
+            sketch.postEvent(new MouseEvent(nativeEvent, nativeEvent.getWhen(),
+                    peAction, peModifiers,
+                    peX,
+                    peY,
+                    peButton,
+                    peCount));
+        }
+
+        wakeUp();
+    }
+
+    /**
+     * Queues the mouse event for the next frame or merges it into the last queued event.
+     * Returns false if the surface is not drawing, the event must then be posted immediately.
+     */
+    protected boolean queueMouseEvent(java.awt.event.MouseEvent nativeEvent, int peAction, int peModifiers, int peX, int peY, int peButton, int peCount) {
+        synchronized (inputLock) {
+            if (!checkInputQueue()) {
+                return false;
+            }
+
+            Event last = pendingInput.isEmpty() ? null : pendingInput.get(pendingInput.size() - 1);
+            if (last instanceof PooledMouseEvent && ((PooledMouseEvent) last).merge(nativeEvent, nativeEvent.getWhen(), peAction, peModifiers, peX, peY, peButton, peCount)) {
+                return true;
+            }
+
+            if (peAction == MouseEvent.MOVE || peAction == MouseEvent.DRAG || peAction == MouseEvent.WHEEL) {
+                PooledMouseEvent event = eventPool.poll();
+                if (event == null) {
+                    event = new PooledMouseEvent();
+                }
+                event.set(nativeEvent, nativeEvent.getWhen(), peAction, peModifiers, peX, peY, peButton, peCount);
+                pendingInput.add(event);
+            } else {
+                pendingInput.add(new MouseEvent(nativeEvent, nativeEvent.getWhen(),
+                        peAction, peModifiers,
+                        peX,
+                        peY,
+                        peButton,
+                        peCount));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Queues the event for the next frame. Returns false if the surface is not drawing, the event must then be posted immediately.
+     */
+    protected boolean queueInput(Event event) {
+        synchronized (inputLock) {
+            if (!checkInputQueue()) {
+                return false;
+            }
+
+            pendingInput.add(event);
+        }
+
+        return true;
+    }
+
+    /**
+     * Posts the queued events immediately if the surface is not drawing, because no frame would take them out of the queue,
+     * or if too many events are queued. Returns false if the surface is not drawing.
+     * Must be called while holding inputLock.
+     */
+    protected boolean checkInputQueue() {
+        boolean drawing = !paused && !stopped && !sketch.finished;
+        if (drawing && pendingInput.size() < MAX_PENDING_INPUT) {
+            return true;
+        }
+
+        //The sketch owns these events now, they are not reused.
+        for (Event event : pendingInput) {
+            sketch.postEvent(event);
+        }
+        pendingInput.clear();
+        return drawing;
+    }
+
+    /**
+     * If set to true input events are posted to the sketch at the start of the next frame
+     * and consecutive move, drag and wheel events are merged into a single event with the latest position and the summed up wheel rotation.
+     * The move, drag and wheel events are reused, a sketch must not keep references to them after its event handler returned.
+     * While the surface is paused or stopped events are posted immediately.
+     * If set to false (default) every event is posted immediately like in the default Processing surfaces.
+     */
+    public void setCoalesceInput(boolean coalesceInput) {
+        this.coalesceInput = coalesceInput;
+    }
+
+    public boolean isCoalesceInput() {
+        return coalesceInput;
+    }
+
+    /**
+     * Posts all events that the AWT thread collected since the last frame to the sketch.
+     * Must be called in the opengl thread before the sketch is drawn.
+     */
+    protected void postInput() {
+        ArrayList<Event> batch;
+        synchronized (inputLock) {
+            if (pendingInput.isEmpty()) {
+                return;
+            }
+
+            batch = pendingInput;
+            pendingInput = postedInput;
+            postedInput = batch;
+        }
+
+        for (Event event : batch) {
+            sketch.postEvent(event);
+        }
+    }
+
+    /**
+     * Puts the posted events back into the pool. If drawn is false the sketch may not have handled them yet, they are not reused then.
+     * Must be called in the opengl thread after the sketch was drawn.
+     */
+    protected void recycleInput(boolean drawn) {
+        if (postedInput.isEmpty()) {
+            return;
+        }
+
+        if (drawn) {
+            synchronized (inputLock) {
+                for (Event event : postedInput) {
+                    if (event instanceof PooledMouseEvent && eventPool.size() < EVENT_POOL_SIZE) {
+                        ((PooledMouseEvent) event).clear();
+                        eventPool.add((PooledMouseEvent) event);
+                    }
+                }
+            }
+        }
+
+        postedInput.clear();
+    }
+
+    /**
+     * Tells JOGL that the surface is animated by the render thread of its {@link PGLComponentAnimator}.
+     * The control methods map to the methods of the surface, the frame counter is not implemented.
+     */
+    protected class AnimatorControl implements GLAnimatorControl {
+
+        protected volatile UncaughtExceptionHandler uncaughtExceptionHandler;
+
+        @Override
+        public boolean isStarted() {
+            return !stopped;
+        }
+
+        @Override
+        public boolean isAnimating() {
+            return !stopped && !paused;
+        }
+
+        @Override
+        public boolean isPaused() {
+            return paused;
+        }
+
+        @Override
+        public Thread getThread() {
+            return renderThread;
+        }
+
+        @Override
+        public boolean start() {
+            startThread();
+            return true;
+        }
+
+        @Override
+        public boolean stop() {
+            return stopThread();
+        }
+
+        @Override
+        public boolean pause() {
+            if (!isAnimating()) {
+                return false;
+            }
+
+            pauseThread();
+            return true;
+        }
+
+        @Override
+        public boolean resume() {
+            if (!paused) {
+                return false;
+            }
+
+            resumeThread();
+            return true;
+        }
+
+        @Override
+        public void add(GLAutoDrawable drawable) {
+            //Only drives this surface.
+        }
+
+        @Override
+        public void remove(GLAutoDrawable drawable) {
+            //Only drives this surface.
+        }
+
+        @Override
+        public UncaughtExceptionHandler getUncaughtExceptionHandler() {
+            return uncaughtExceptionHandler;
+        }
+
+        @Override
+        public void setUncaughtExceptionHandler(UncaughtExceptionHandler handler) {
+            this.uncaughtExceptionHandler = handler;
+        }
+
+        @Override
+        public void setUpdateFPSFrames(int frames, PrintStream out) {
+            //Not implemented, see PGLComponentMetrics.
+        }
+
+        @Override
+        public void resetFPSCounter() {
+            //Not implemented, see PGLComponentMetrics.
+        }
+
+        @Override
+        public int getUpdateFPSFrames() {
+            return 0;
+        }
+
+        @Override
+        public long getFPSStartTime() {
+            return 0;
+        }
+
+        @Override
+        public long getLastFPSUpdateTime() {
+            return 0;
+        }
+
+        @Override
+        public long getLastFPSPeriod() {
+            return 0;
+        }
+
+        @Override
+        public float getLastFPS() {
+            return 0;
+        }
+
+        @Override
+        public int getTotalFPSFrames() {
+            return 0;
+        }
+
+        @Override
+        public long getTotalFPSDuration() {
+            return 0;
+        }
+
+        @Override
+        public float getTotalFPS() {
+            return 0;
+        }
+    }
+
+    /**
+     * Mutable mouse event that is reused for move, drag and wheel events.
+     */
+    protected static class PooledMouseEvent extends MouseEvent {
+
+        public PooledMouseEvent() {
+            super(null, 0, 0, 0, 0, 0, 0, 0);
+        }
+
+        protected void set(Object nativeObject, long millis, int action, int modifiers, int x, int y, int button, int count) {
+            this.nativeObject = nativeObject;
+            this.millis = millis;
+            this.action = action;
+            this.modifiers = modifiers;
+            this.x = x;
+            this.y = y;
+            this.button = button;
+            this.count = count;
+        }
+
+        /**
+         * Merges the next event into this event if it is a move, drag or wheel event of the same kind.
+         * Returns false if the events can not be merged.
+         */
+        protected boolean merge(Object nativeObject, long millis, int action, int modifiers, int x, int y, int button, int count) {
+            if (action != this.action || modifiers != this.modifiers || button != this.button) {
+                return false;
+            }
+
+            if (action == WHEEL) {
+                count += this.count;
+            } else if (action != MOVE && action != DRAG) {
+                return false;
+            }
+
+            set(nativeObject, millis, action, modifiers, x, y, button, count);
+            return true;
+        }
+
+        protected void clear() {
+            nativeObject = null;
+        }
     }
 }
@@ -0,0 +1,130 @@
+// This file is part of PGLComponent.
+// Copyright (c) 2022 Alexander Schütz
+//
+// This library is free software; you can redistribute it and/or
+// modify it under the terms of the GNU Lesser General Public
+// License as published by the Free Software Foundation; either
+// version 2.1 of the License, or (at your option) any later version.
+//
+// This library is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+// Lesser General Public License for more details.
+//
+// You should have received a copy of the GNU Lesser General Public
+// License along with this library; if not, write to the Free Software
+// Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+
+package io.github.alexanderschuetz97.pglcomponent;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2GL3;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.GLBuffers;
+import processing.core.PApplet;
+import processing.core.PMatrix3D;
+
+import java.nio.IntBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Renders a sketch at a resolution larger than its surface by drawing the same frame once per tile.
+ * Each tile is drawn with a projection that only covers its part of the image, read back and copied into a band of rows
+ * that is handed to the {@link PGLComponentCaptureOutput} once all tiles of the band are done.
+ * Memory is bounded to 1 tile and 1 band of tiles regardless of the resolution.
+ */
+public class PGLComponentTiledCapture {
+
+    protected final int width;
+    protected final int height;
+    protected final PGLComponentCaptureOutput output;
+    protected final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    public PGLComponentTiledCapture(int width, int height, PGLComponentCaptureOutput output) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("width or height <= 0");
+        }
+
+        if (output == null) {
+            throw new IllegalArgumentException("output is null");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.output = output;
+    }
+
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+    /**
+     * Renders all tiles. Must be called in the opengl thread while the sketch is not drawing.
+     * The size of the tiles is the size of the surface.
+     */
+    protected void run(GL gl, PApplet sketch, PGLComponentIndirectRenderer graphics, PGLComponentBridge bridge, int tileWidth, int tileHeight) {
+        int frameCount = sketch.frameCount;
+        try {
+            IntBuffer tile = GLBuffers.newDirectIntBuffer(tileWidth * tileHeight);
+            int[] band = new int[width * tileHeight];
+            GL3 gl3 = gl.getGL3();
+
+            output.begin(width, height);
+            for (int y0 = 0; y0 < height; y0 += tileHeight) {
+                int rows = Math.min(tileHeight, height - y0);
+                for (int x0 = 0; x0 < width; x0 += tileWidth) {
+                    int columns = Math.min(tileWidth, width - x0);
+
+                    //Every tile has to show the same frame.
+                    graphics.setTile(tileProjection(x0, y0, tileWidth, tileHeight));
+                    sketch.frameCount = frameCount;
+                    sketch.redraw();
+                    sketch.handleDraw();
+
+                    tile.clear();
+                    //A multisampled back buffer is only resolved on swap, read the resolved copy of the bridge instead.
+                    boolean resolved = bridge.bindResolvedFramebuffer(gl3, tileWidth, tileHeight);
+                    try {
+                        gl3.glReadPixels(0, 0, tileWidth, tileHeight, GL.GL_BGRA, GL2GL3.GL_UNSIGNED_INT_8_8_8_8_REV, tile);
+                    } finally {
+                        if (resolved) {
+                            bridge.unbindReadFramebuffer(gl3);
+                        }
+                    }
+
+                    for (int y = 0; y < rows; y++) {
+                        //Opengl stores the bottom row first.
+                        tile.position((tileHeight - 1 - y) * tileWidth);
+                        tile.get(band, y * width + x0, columns);
+                    }
+                }
+
+                output.writeRows(band, rows);
+            }
+            output.end();
+            PGLComponentExecutor.complete(future, null);
+        } catch (Exception e) {
+            PGLComponentExecutor.completeExceptionally(future, e);
+        } finally {
+            graphics.setTile(null);
+            sketch.frameCount = frameCount;
+        }
+    }
+
+    /**
+     * Returns the transformation that maps the part of the image covered by the tile at the given pixel to the entire viewport.
+     */
+    protected PMatrix3D tileProjection(int x0, int y0, int tileWidth, int tileHeight) {
+        float scaleX = (float) width / tileWidth;
+        float scaleY = (float) height / tileHeight;
+        //Center of the tile in normalized device coordinates of the entire image, y points up.
+        float centerX = -1f + (2f * x0 + tileWidth) / width;
+        float centerY = 1f - (2f * y0 + tileHeight) / height;
+
+        return new PMatrix3D(
+                scaleX, 0, 0, -centerX * scaleX,
+                0, scaleY, 0, -centerY * scaleY,
+                0, 0, 1, 0,
+                0, 0, 0, 1);
+    }
+}